@@ -0,0 +1,125 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+
+/**
+ * Builds the scenes shared by the benchmarks: panels filled with small, randomly placed boxes spread over several layers.
+ * Every scene is generated from a fixed seed, so each run measures the same work.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class BenchmarkScenes
+{
+    /**
+     * The width of every benchmark panel.
+     */
+    static final int WIDTH = 1920;
+    /**
+     * The height of every benchmark panel.
+     */
+    static final int HEIGHT = 1080;
+    /**
+     * The width and height of every box.
+     */
+    static final int BOX_SIZE = 24;
+
+    /**
+     * A filled box with bounds and a rectangular hitbox.
+     */
+    static final class Box extends GraphicalComponent implements GraphicalHitbox
+    {
+        /**
+         * The bounds of the box.
+         */
+        private final Rectangle bounds;
+        /**
+         * The colour of the box.
+         */
+        private final Color colour;
+
+        /**
+         * Constructor for Box.
+         *
+         * @param layer  the layer
+         * @param x      the x-position
+         * @param y      the y-position
+         * @param colour the colour
+         */
+        Box(int layer, int x, int y, Color colour)
+        {
+            super(layer);
+            bounds = new Rectangle(x, y, BOX_SIZE, BOX_SIZE);
+            this.colour = colour;
+            setHitbox(this);
+        }
+
+        @Override
+        public void draw(Graphics g)
+        {
+            g.setColor(colour);
+            g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        }
+
+        @Override
+        public Rectangle getBounds()
+        {
+            return bounds;
+        }
+
+        @Override
+        public boolean activated(MouseEvent me)
+        {
+            return bounds.contains(me.getX(), me.getY());
+        }
+
+        @Override
+        public void whenClicked(MouseEvent me)
+        {
+        }
+
+        @Override
+        public void whenReleased(MouseEvent me)
+        {
+        }
+    }
+
+    /**
+     * Creates a panel of the benchmark size, filled with boxes, with every addition already processed.
+     *
+     * @param count  the number of boxes
+     * @param layers the number of layers the boxes are spread over
+     * @return the panel
+     */
+    static SPComponent createPanel(int count, int layers)
+    {
+        SPComponent panel = new SPComponent();
+        panel.setSize(WIDTH, HEIGHT);
+        Random random = new Random(42);
+        for(int i = 0; i < count; i++)
+            panel.addComponent(createBox(random, layers));
+        panel.clearPending(); // Processes the additions
+        return panel;
+    }
+
+    /**
+     * Creates a randomly placed box.
+     *
+     * @param random the source of randomness
+     * @param layers the number of layers the box may be placed on
+     * @return the box
+     */
+    static Box createBox(Random random, int layers)
+    {
+        return new Box(random.nextInt(layers), random.nextInt(WIDTH - BOX_SIZE), random.nextInt(HEIGHT - BOX_SIZE), new Color(random.nextInt()));
+    }
+
+    /**
+     * Private constructor, as this class only holds static helpers.
+     */
+    private BenchmarkScenes()
+    {
+    }
+}
@@ -0,0 +1,93 @@
+package spp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding and removing batches of short-lived components, as particles and projectiles do, both with freshly
+ * constructed components and with components reused through a ComponentPool. The pending additions and removals are
+ * processed directly through clearPending, as the panel's update would once per tick, so that the measurement does not
+ * include walking every resident component.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChurnBenchmark
+{
+    /**
+     * The number of components already in the panel.
+     */
+    @Param({"1000", "100000"})
+    public int resident;
+    /**
+     * The number of components added and removed by each invocation.
+     */
+    @Param({"100", "10000"})
+    public int batch;
+
+    /**
+     * The panel components are added to and removed from.
+     */
+    private SPComponent panel;
+    /**
+     * The components added by the current invocation.
+     */
+    private GraphicalComponent[] spawned;
+    /**
+     * The pool reused components are taken from.
+     */
+    private ComponentPool<BenchmarkScenes.Box> pool;
+
+    /**
+     * Builds the scene and fills the pool.
+     */
+    @Setup
+    public void setUp()
+    {
+        panel = BenchmarkScenes.createPanel(resident, 16);
+        spawned = new GraphicalComponent[batch];
+        Random random = new Random(7);
+        pool = new ComponentPool<>(() -> BenchmarkScenes.createBox(random, 16), batch);
+        pool.prefill(batch);
+    }
+
+    /**
+     * Adds a batch of newly constructed components and then removes it again.
+     */
+    @Benchmark
+    public void construct()
+    {
+        Random random = new Random(7);
+        for(int i = 0; i < batch; i++)
+        {
+            spawned[i] = BenchmarkScenes.createBox(random, 16);
+            panel.addComponent(spawned[i]);
+        }
+        panel.clearPending();
+        for(int i = 0; i < batch; i++)
+            panel.removeComponent(spawned[i]);
+        panel.clearPending();
+    }
+
+    /**
+     * Adds a batch of pooled components and then removes it again, returning every component to the pool.
+     */
+    @Benchmark
+    public void pooled()
+    {
+        for(int i = 0; i < batch; i++)
+            spawned[i] = pool.spawn(panel);
+        panel.clearPending();
+        for(int i = 0; i < batch; i++)
+            panel.removeComponent(spawned[i]);
+        panel.clearPending();
+    }
+}
@@ -0,0 +1,76 @@
+package spp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of dispatching mouse and key presses to a panel's components, including hitbox hit-testing.
+ * Every press is followed by its release, so the set of held inputs stays the same between invocations.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DispatchBenchmark
+{
+    /**
+     * The number of components in the panel.
+     */
+    @Param({"10", "1000", "100000"})
+    public int components;
+
+    /**
+     * The panel receiving the events.
+     */
+    private SPComponent panel;
+    /**
+     * The mouse events dispatched, created up front so that allocating them is not measured.
+     */
+    private MouseEvent pressEvent, releaseEvent;
+    /**
+     * The key events dispatched.
+     */
+    private KeyEvent keyPressEvent, keyReleaseEvent;
+
+    /**
+     * Builds the scene and the events dispatched to it.
+     */
+    @Setup
+    public void setUp()
+    {
+        panel = BenchmarkScenes.createPanel(components, 16);
+        int x = BenchmarkScenes.WIDTH / 2, y = BenchmarkScenes.HEIGHT / 2;
+        pressEvent = new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, 0, 0, x, y, 1, false, MouseEvent.BUTTON1);
+        releaseEvent = new MouseEvent(panel, MouseEvent.MOUSE_RELEASED, 0, 0, x, y, 1, false, MouseEvent.BUTTON1);
+        keyPressEvent = new KeyEvent(panel, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_SPACE, ' ');
+        keyReleaseEvent = new KeyEvent(panel, KeyEvent.KEY_RELEASED, 0, 0, KeyEvent.VK_SPACE, ' ');
+    }
+
+    /**
+     * Dispatches a mouse press and its release.
+     */
+    @Benchmark
+    public void mousePress()
+    {
+        panel.mousePressEvent(pressEvent);
+        panel.mouseReleaseEvent(releaseEvent);
+    }
+
+    /**
+     * Dispatches a key press and its release.
+     */
+    @Benchmark
+    public void keyPress()
+    {
+        panel.keyPressEvent(keyPressEvent);
+        panel.keyReleaseEvent(keyReleaseEvent);
+    }
+}
@@ -0,0 +1,76 @@
+package spp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how accurately a FrameScheduler paces its frames. Each invocation waits for the next frame, so the sampled times
+ * are the intervals between frames: an accurate scheduler shows every percentile close to the frame interval.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FramePacingBenchmark
+{
+    /**
+     * The framerate of the scheduler.
+     */
+    @Param({"60", "144", "240"})
+    public int fps;
+    /**
+     * The missed frame policy of the scheduler.
+     */
+    @Param({"SKIP", "CATCH_UP"})
+    public FrameScheduler.MissedFramePolicy policy;
+
+    /**
+     * The scheduler being measured.
+     */
+    private FrameScheduler scheduler;
+    /**
+     * Released once per frame.
+     */
+    private Semaphore frames;
+
+    /**
+     * Starts the scheduler.
+     */
+    @Setup
+    public void setUp()
+    {
+        frames = new Semaphore(0);
+        scheduler = new FrameScheduler("Benchmark Timer", frames::release);
+        scheduler.setFPS(fps);
+        scheduler.setMissedFramePolicy(policy);
+        scheduler.setActive(true);
+    }
+
+    /**
+     * Stops the scheduler.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        scheduler.setActive(false);
+    }
+
+    /**
+     * Waits for the next frame, discarding any frames which were run while the benchmark was not waiting.
+     *
+     * @throws InterruptedException if the benchmark is interrupted.
+     */
+    @Benchmark
+    public void nextFrame() throws InterruptedException
+    {
+        frames.drainPermits();
+        frames.acquire();
+    }
+}
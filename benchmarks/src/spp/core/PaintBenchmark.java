@@ -0,0 +1,78 @@
+package spp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SPComponent.paint drawing an entire panel into an offscreen image, across scene sizes and layer counts.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark
+{
+    /**
+     * The number of components in the panel.
+     */
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int components;
+    /**
+     * The number of layers the components are spread over.
+     */
+    @Param({"1", "16", "256"})
+    public int layers;
+
+    /**
+     * The panel being painted.
+     */
+    private SPComponent panel;
+    /**
+     * The image painted into.
+     */
+    private BufferedImage image;
+    /**
+     * The graphics of the image.
+     */
+    private Graphics2D g;
+
+    /**
+     * Builds the scene and the image it is painted into.
+     */
+    @Setup
+    public void setUp()
+    {
+        panel = BenchmarkScenes.createPanel(components, layers);
+        image = new BufferedImage(BenchmarkScenes.WIDTH, BenchmarkScenes.HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        g = image.createGraphics();
+    }
+
+    /**
+     * Releases the graphics of the image.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        g.dispose();
+    }
+
+    /**
+     * Paints the whole panel.
+     *
+     * @return the number of components drawn, so the paint is not optimized away
+     */
+    @Benchmark
+    public int paint()
+    {
+        panel.paint(g);
+        return panel.getDrawnCount();
+    }
+}
@@ -0,0 +1,495 @@
+package spp.core;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads images in the background and keeps them in a memory-bounded cache, so that screens never block the event dispatch thread
+ * while decoding images, and images which are no longer in use do not stay in memory forever.
+ * Images are decoded on a pool of background threads and converted into images compatible with the screen. Until an image has
+ * loaded, its handle returns a placeholder. Loaded images are kept in a least-recently-used cache with a byte budget; images
+ * evicted from it are only softly reachable, so they are reused if the garbage collector has not reclaimed them yet, and
+ * transparently loaded again otherwise.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class AssetManager
+{
+    /**
+     * A handle to an image managed by an AssetManager. Handles never hold on to their image, so they can be kept for as long as needed.
+     */
+    public static final class ImageHandle
+    {
+        /**
+         * The manager the image belongs to.
+         */
+        private final AssetManager manager;
+        /**
+         * The location of the image.
+         */
+        private final URL url;
+        /**
+         * The location of the image as a URI, used as its cache key. Unlike URL, comparing URIs never resolves host names.
+         */
+        private final URI key;
+        /**
+         * The error the last load attempt failed with, or null if it did not fail.
+         */
+        private volatile IOException error;
+        /**
+         * Whether or not the image has ever finished loading, after which it is loaded again whenever it is no longer cached.
+         */
+        private volatile boolean loadedBefore;
+        /**
+         * Tasks to run on the event dispatch thread once the image has loaded.
+         */
+        private final ArrayList<Runnable> listeners;
+
+        /**
+         * Constructor for ImageHandle.
+         *
+         * @param manager the manager
+         * @param url     the location of the image
+         * @param key     the location of the image as a URI
+         */
+        private ImageHandle(AssetManager manager, URL url, URI key)
+        {
+            this.manager = manager;
+            this.url = url;
+            this.key = key;
+            listeners = new ArrayList<>();
+        }
+
+        /**
+         * Returns the image, or the placeholder if it has not finished loading (or has been reclaimed and is loading again).
+         *
+         * @return the image
+         */
+        public Image getImage()
+        {
+            BufferedImage image = manager.lookup(this);
+            return image == null ? manager.getPlaceholder() : image;
+        }
+
+        /**
+         * Returns whether or not the image is currently loaded.
+         *
+         * @return whether or not the image is loaded
+         */
+        public boolean isLoaded()
+        {
+            return manager.isCached(key);
+        }
+
+        /**
+         * Returns the error the image failed to load with, if any.
+         *
+         * @return the error, or null if loading has not failed.
+         */
+        public IOException getError()
+        {
+            return error;
+        }
+
+        /**
+         * Runs a task on the event dispatch thread once the image has loaded, or soon if it already has,
+         * for example to mark the components drawing it as dirty. If loading fails, the task is dropped without being run.
+         *
+         * @param task the task
+         */
+        public void whenLoaded(Runnable task)
+        {
+            synchronized(listeners)
+            {
+                if(!isLoaded())
+                {
+                    if(error == null || manager.isLoading(key))
+                        listeners.add(task);
+                    return;
+                }
+            }
+            EventQueue.invokeLater(task);
+        }
+
+        /**
+         * Returns the location of the image.
+         *
+         * @return the location
+         */
+        public URL getURL()
+        {
+            return url;
+        }
+    }
+
+    /**
+     * Decodes images in the background.
+     */
+    private final ExecutorService loader;
+    /**
+     * Recently used images, in order from least to most recently used.
+     */
+    private final LinkedHashMap<URI, BufferedImage> cache;
+    /**
+     * Images evicted from the cache, kept until the garbage collector reclaims them.
+     */
+    private final HashMap<URI, SoftReference<BufferedImage>> evicted;
+    /**
+     * Handles for every image requested so far, so an image is never loaded twice at once.
+     */
+    private final HashMap<URI, ImageHandle> handles;
+    /**
+     * Images currently being loaded.
+     * Every map is keyed by URI rather than URL, since URL.equals and URL.hashCode resolve host names, which could block
+     * the event dispatch thread during a paint and makes hosts sharing an address collide.
+     */
+    private final HashMap<URI, Boolean> loading;
+    /**
+     * The maximum number of bytes of images kept in the cache.
+     */
+    private long byteBudget;
+    /**
+     * The number of bytes of images currently kept in the cache.
+     */
+    private long bytesUsed;
+    /**
+     * The image returned by handles whose image has not loaded yet.
+     */
+    private volatile Image placeholder;
+
+    /**
+     * Constructor for AssetManager, using a background thread for every two processors.
+     *
+     * @param byteBudget the maximum number of bytes of images kept in the cache
+     */
+    public AssetManager(long byteBudget)
+    {
+        this(byteBudget, Math.max(Runtime.getRuntime().availableProcessors() / 2, 1));
+    }
+
+    /**
+     * Constructor for AssetManager.
+     *
+     * @param byteBudget the maximum number of bytes of images kept in the cache
+     * @param threads    the number of background threads decoding images
+     */
+    public AssetManager(long byteBudget, int threads)
+    {
+        this.byteBudget = byteBudget;
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        evicted = new HashMap<>();
+        handles = new HashMap<>();
+        loading = new HashMap<>();
+        placeholder = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+        AtomicInteger count = new AtomicInteger();
+        loader = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "AssetManager Loader " + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts loading an image file in the background, if it is not already loaded or loading.
+     *
+     * @param path the path of the image file
+     * @return the handle of the image
+     * @throws IllegalArgumentException if the path cannot be converted into a URL.
+     */
+    public ImageHandle load(String path) throws IllegalArgumentException
+    {
+        try
+        {
+            return load(new File(path).toURI().toURL());
+        }
+        catch(MalformedURLException e)
+        {
+            throw new IllegalArgumentException("Invalid image path: " + path, e);
+        }
+    }
+
+    /**
+     * Starts loading an image in the background, if it is not already loaded or loading.
+     *
+     * @param url the location of the image, such as a class path resource
+     * @return the handle of the image
+     * @throws IllegalArgumentException if the URL cannot be converted into a URI.
+     */
+    public synchronized ImageHandle load(URL url) throws IllegalArgumentException
+    {
+        URI key;
+        try
+        {
+            key = url.toURI();
+        }
+        catch(URISyntaxException e)
+        {
+            throw new IllegalArgumentException("Invalid image URL: " + url, e);
+        }
+        ImageHandle handle = handles.computeIfAbsent(key, k -> new ImageHandle(this, url, k));
+        if(lookup(handle) == null)
+            startLoading(handle);
+        return handle;
+    }
+
+    /**
+     * Returns a cached image, marking it as recently used and recovering it from the evicted images if it has not been reclaimed.
+     * If an image which has loaded before is no longer available, because the garbage collector reclaimed it, it starts loading again.
+     *
+     * @param handle the handle of the image
+     * @return the image, or null if it is not available yet.
+     */
+    private synchronized BufferedImage lookup(ImageHandle handle)
+    {
+        BufferedImage image = cache.get(handle.key);
+        if(image != null)
+            return image;
+
+        SoftReference<BufferedImage> reference = evicted.remove(handle.key);
+        image = reference == null ? null : reference.get();
+        if(image != null)
+        {
+            store(handle.key, image);
+            return image;
+        }
+        if(handle.loadedBefore && handle.error == null)
+            startLoading(handle); // Reclaimed, whether or not its cleared reference has been purged yet
+        return null;
+    }
+
+    /**
+     * Returns whether or not an image is currently cached, without changing how recently it was used.
+     *
+     * @param key the location of the image
+     * @return whether or not the image is cached
+     */
+    private synchronized boolean isCached(URI key)
+    {
+        if(cache.containsKey(key))
+            return true;
+        SoftReference<BufferedImage> reference = evicted.get(key);
+        return reference != null && reference.get() != null;
+    }
+
+    /**
+     * Returns whether or not an image is currently being loaded.
+     *
+     * @param key the location of the image
+     * @return whether or not the image is loading
+     */
+    private synchronized boolean isLoading(URI key)
+    {
+        return loading.containsKey(key);
+    }
+
+    /**
+     * Submits an image to the background threads, unless it is already loading.
+     *
+     * @param handle the handle of the image
+     */
+    private synchronized void startLoading(ImageHandle handle)
+    {
+        if(loading.putIfAbsent(handle.key, Boolean.TRUE) != null)
+            return;
+        loader.execute(() -> {
+            BufferedImage image = null;
+            try
+            {
+                image = decode(handle.url);
+                handle.error = null;
+            }
+            catch(IOException e)
+            {
+                handle.error = e;
+            }
+            finished(handle, image);
+        });
+    }
+
+    /**
+     * Stores a loaded image and notifies anything waiting on it. If the image failed to load, anything waiting on it is dropped instead.
+     *
+     * @param handle the handle of the image
+     * @param image  the image, or null if it failed to load
+     */
+    private void finished(ImageHandle handle, BufferedImage image)
+    {
+        ArrayList<Runnable> listeners;
+        synchronized(this)
+        {
+            loading.remove(handle.key);
+            if(image != null)
+            {
+                store(handle.key, image);
+                handle.loadedBefore = true;
+            }
+        }
+        synchronized(handle.listeners)
+        {
+            listeners = new ArrayList<>(handle.listeners);
+            handle.listeners.clear();
+        }
+        if(image == null)
+            return;
+        for(Runnable listener: listeners)
+            EventQueue.invokeLater(listener);
+    }
+
+    /**
+     * Decodes an image and converts it into an image compatible with the screen, so it can be drawn accelerated.
+     *
+     * @param url the location of the image
+     * @return the image
+     * @throws IOException if the image cannot be read.
+     */
+    private static BufferedImage decode(URL url) throws IOException
+    {
+        BufferedImage decoded = ImageIO.read(url);
+        if(decoded == null)
+            throw new IOException("Unsupported image format: " + url);
+        if(GraphicsEnvironment.isHeadless())
+            return decoded;
+
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        if(decoded.getColorModel().equals(gc.getColorModel()))
+            return decoded;
+        BufferedImage compatible = gc.createCompatibleImage(decoded.getWidth(), decoded.getHeight(), decoded.getTransparency());
+        Graphics2D g = compatible.createGraphics();
+        try
+        {
+            g.drawImage(decoded, 0, 0, null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return compatible;
+    }
+
+    /**
+     * Puts an image into the cache as the most recently used, evicting the least recently used images while over budget.
+     * The newest image is never evicted, even if it is larger than the budget on its own.
+     *
+     * @param key   the location of the image
+     * @param image the image
+     */
+    private void store(URI key, BufferedImage image)
+    {
+        BufferedImage previous = cache.put(key, image);
+        if(previous != null)
+            bytesUsed -= sizeOf(previous);
+        bytesUsed += sizeOf(image);
+        evictOverBudget(key);
+    }
+
+    /**
+     * Moves the least recently used images out of the cache until it is within its byte budget.
+     *
+     * @param keep an image which should not be evicted, or null
+     */
+    private void evictOverBudget(URI keep)
+    {
+        Iterator<Map.Entry<URI, BufferedImage>> entries = cache.entrySet().iterator();
+        while(bytesUsed > byteBudget && entries.hasNext())
+        {
+            Map.Entry<URI, BufferedImage> entry = entries.next();
+            if(entry.getKey().equals(keep))
+                continue;
+            bytesUsed -= sizeOf(entry.getValue());
+            evicted.put(entry.getKey(), new SoftReference<>(entry.getValue()));
+            entries.remove();
+        }
+        evicted.values().removeIf(reference -> reference.get() == null);
+    }
+
+    /**
+     * Returns the number of bytes of memory the pixels of an image take up, as stored in its raster's data buffer.
+     *
+     * @param image the image
+     * @return the number of bytes
+     */
+    private static long sizeOf(BufferedImage image)
+    {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Sets the maximum number of bytes of images kept in the cache, evicting images if the cache is now over budget.
+     *
+     * @param byteBudget the number of bytes
+     */
+    public synchronized void setByteBudget(long byteBudget)
+    {
+        this.byteBudget = byteBudget;
+        evictOverBudget(null);
+    }
+
+    /**
+     * Returns the maximum number of bytes of images kept in the cache.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getByteBudget()
+    {
+        return byteBudget;
+    }
+
+    /**
+     * Returns the number of bytes of images currently kept in the cache, not counting evicted images.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getBytesUsed()
+    {
+        return bytesUsed;
+    }
+
+    /**
+     * Sets the image returned by handles whose image has not loaded yet.
+     *
+     * @param placeholder the placeholder image
+     */
+    public void setPlaceholder(Image placeholder)
+    {
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * Returns the image returned by handles whose image has not loaded yet. By default, a single transparent pixel.
+     *
+     * @return the placeholder image
+     */
+    public Image getPlaceholder()
+    {
+        return placeholder;
+    }
+
+    /**
+     * Stops the background threads. Images which are already loaded stay available.
+     */
+    public void shutdown()
+    {
+        loader.shutdown();
+    }
+}
@@ -0,0 +1,184 @@
+package spp.core;
+
+import java.util.function.Supplier;
+
+/**
+ * A pool of reusable GraphicalComponents of a single type, for short-lived components such as particles and projectiles.
+ * Components are acquired from the pool instead of being constructed, and are automatically returned to it once they have been
+ * removed from their SPComponent, after being reset through GraphicalComponent.reset(). Once the pool has warmed up,
+ * spawning and removing components does not allocate.
+ * Acquiring components is safe from any thread.
+ *
+ * @author Ben Zeng
+ * @version 2
+ * @param <T> the type of component
+ */
+public class ComponentPool<T extends GraphicalComponent>
+{
+    /**
+     * Creates new components when the pool is empty.
+     */
+    private final Supplier<? extends T> factory;
+    /**
+     * The components available for reuse, in the first [size] slots.
+     */
+    private final GraphicalComponent[] free;
+    /**
+     * The number of components available for reuse.
+     */
+    private int size;
+    /**
+     * The number of acquisitions satisfied by reusing a component.
+     */
+    private long hits;
+    /**
+     * The number of acquisitions which had to construct a new component.
+     */
+    private long misses;
+    /**
+     * The number of released components which were discarded because the pool was full.
+     */
+    private long discards;
+
+    /**
+     * Constructor for ComponentPool.
+     *
+     * @param factory creates new components when the pool is empty
+     * @param maxSize the maximum number of components kept for reuse
+     * @throws IllegalArgumentException if the maximum size is negative.
+     */
+    public ComponentPool(Supplier<? extends T> factory, int maxSize) throws IllegalArgumentException
+    {
+        if(maxSize < 0)
+            throw new IllegalArgumentException("Pool size must not be negative: " + maxSize);
+        this.factory = factory;
+        free = new GraphicalComponent[maxSize];
+    }
+
+    /**
+     * Takes a component from the pool, constructing a new one if the pool is empty.
+     *
+     * @return the component
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire()
+    {
+        synchronized(this)
+        {
+            if(size > 0)
+            {
+                hits++;
+                GraphicalComponent component = free[--size];
+                free[size] = null;
+                return (T) component;
+            }
+            misses++;
+        }
+        T component = factory.get();
+        component.pool = this;
+        return component;
+    }
+
+    /**
+     * Takes a component from the pool and adds it to a panel.
+     *
+     * @param panel the panel
+     * @return the component
+     * @throws IllegalStateException if the panel refuses the component, because it already belongs to a panel.
+     */
+    public T spawn(SPComponent panel) throws IllegalStateException
+    {
+        T component = acquire();
+        if(!panel.addComponent(component))
+        {
+            if(!component.isOwned())
+                release(component); // Never hands a component still inside of a panel back out
+            throw new IllegalStateException("Pooled component could not be added, as it already belongs to a panel");
+        }
+        return component;
+    }
+
+    /**
+     * Constructs components until the pool holds a certain number of them, so that spawning never has to allocate later on.
+     *
+     * @param count the number of components, capped at the maximum size
+     */
+    public void prefill(int count)
+    {
+        count = Math.min(count, free.length);
+        while(getSize() < count)
+        {
+            T component = factory.get();
+            component.pool = this;
+            release(component);
+        }
+    }
+
+    /**
+     * Resets a component and returns it to the pool, discarding it if the pool is full.
+     * Called by SPComponent once the component's removal has been processed.
+     *
+     * @param component the component
+     */
+    void release(GraphicalComponent component)
+    {
+        component.recycle();
+        synchronized(this)
+        {
+            if(size == free.length)
+                discards++;
+            else
+                free[size++] = component;
+        }
+    }
+
+    /**
+     * Returns the number of components currently available for reuse.
+     *
+     * @return the size
+     */
+    public synchronized int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of components kept for reuse.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize()
+    {
+        return free.length;
+    }
+
+    /**
+     * Returns the number of acquisitions satisfied by reusing a component.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of acquisitions which had to construct a new component.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of released components which were discarded because the pool was full.
+     *
+     * @return the number of discards
+     */
+    public synchronized long getDiscards()
+    {
+        return discards;
+    }
+}
@@ -0,0 +1,183 @@
+package spp.core;
+
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Collects the regions of an SPComponent which need to be repainted, and merges them into a small number of clip rectangles.
+ * Rectangles are reused between frames, so marking regions does not allocate once the set has warmed up.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class DirtyRegions
+{
+    /**
+     * Past this many regions, every region is merged into one instead of merging pairs.
+     */
+    private static final int PAIRWISE_LIMIT = 64;
+    /**
+     * Past this many regions, the entire panel is marked instead, so the set cannot grow without bound.
+     */
+    private static final int MAX_REGIONS = 1024;
+
+    /**
+     * The regions currently marked, in the first [size] slots.
+     */
+    private final ArrayList<Rectangle> regions;
+    /**
+     * The number of regions currently marked.
+     */
+    private int size;
+    /**
+     * Whether or not the entire panel has been marked.
+     */
+    private boolean everything;
+
+    /**
+     * Constructor for DirtyRegions.
+     */
+    DirtyRegions()
+    {
+        regions = new ArrayList<>();
+    }
+
+    /**
+     * Marks a region as needing to be repainted.
+     *
+     * @param region the region
+     */
+    void add(Rectangle region)
+    {
+        if(everything || region.isEmpty())
+            return;
+        if(size == MAX_REGIONS)
+        {
+            addEverything();
+            return;
+        }
+        if(size == regions.size())
+            regions.add(new Rectangle());
+        regions.get(size++).setBounds(region);
+    }
+
+    /**
+     * Marks the entire panel as needing to be repainted.
+     */
+    void addEverything()
+    {
+        everything = true;
+        size = 0;
+    }
+
+    /**
+     * Returns whether or not the entire panel has been marked.
+     *
+     * @return whether or not everything is dirty
+     */
+    boolean isEverything()
+    {
+        return everything;
+    }
+
+    /**
+     * Returns whether or not nothing has been marked.
+     *
+     * @return whether or not the set is empty
+     */
+    boolean isEmpty()
+    {
+        return !everything && size == 0;
+    }
+
+    /**
+     * Merges the marked regions until there are at most a certain number of them.
+     * Overlapping regions are always merged; after that, the pair whose union adds the least area is merged first.
+     * The merged regions are copied into the rectangles of a separate list, so that marking new regions afterwards cannot change them.
+     *
+     * @param maxRegions the maximum number of regions
+     * @param out        the list whose rectangles the merged regions are copied into, grown if needed
+     * @return the number of merged regions
+     */
+    int merge(int maxRegions, ArrayList<Rectangle> out)
+    {
+        if(size > PAIRWISE_LIMIT)
+        {
+            for(int i = 1; i < size; i++)
+                regions.get(0).add(regions.get(i));
+            size = 1;
+        }
+
+        while(size > 1)
+        {
+            int bestA = -1, bestB = -1;
+            long bestCost = Long.MAX_VALUE;
+            for(int a = 0; a < size && bestCost > 0; a++)
+            {
+                Rectangle ra = regions.get(a);
+                for(int b = a + 1; b < size; b++)
+                {
+                    Rectangle rb = regions.get(b);
+                    long cost = ra.intersects(rb) ? 0 : unionArea(ra, rb) - area(ra) - area(rb);
+                    if(cost < bestCost)
+                    {
+                        bestCost = cost;
+                        bestA = a;
+                        bestB = b;
+                        if(cost == 0)
+                            break;
+                    }
+                }
+            }
+            if(bestCost > 0 && size <= maxRegions)
+                break;
+
+            regions.get(bestA).add(regions.get(bestB));
+            // Swaps the merged-away rectangle out of the live range so it can be reused.
+            regions.set(bestB, regions.set(size - 1, regions.get(bestB)));
+            size--;
+        }
+
+        for(int i = 0; i < size; i++)
+        {
+            if(i == out.size())
+                out.add(new Rectangle());
+            out.get(i).setBounds(regions.get(i));
+        }
+        return size;
+    }
+
+    /**
+     * Unmarks every region.
+     */
+    void clear()
+    {
+        size = 0;
+        everything = false;
+    }
+
+    /**
+     * Returns the area of a rectangle.
+     *
+     * @param r the rectangle
+     * @return the area
+     */
+    private static long area(Rectangle r)
+    {
+        return (long) r.width * r.height;
+    }
+
+    /**
+     * Returns the area of the bounding box of two rectangles.
+     *
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return the area
+     */
+    private static long unionArea(Rectangle a, Rectangle b)
+    {
+        long width = Math.max(a.x + a.width, b.x + b.width) - Math.min(a.x, b.x);
+        long height = Math.max(a.y + a.height, b.y + b.height) - Math.min(a.y, b.y);
+        return width * height;
+    }
+}
@@ -0,0 +1,478 @@
+package spp.core;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records where the frame time of a HostApplication goes: how long frames take to run and how far apart they start,
+ * how many frames are dropped or coalesced, how long each layer and class of GraphicalComponent takes to draw,
+ * and how long input events wait before being handled.
+ * Metrics are disabled by default, in which case recording costs a single volatile read per frame, paint and input event.
+ * They can be read directly, or exported over JMX through register().
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class FrameMetrics implements FrameMetricsMXBean
+{
+    /**
+     * A histogram of durations, bucketed by powers of two microseconds. Safe to record to and read from any thread.
+     */
+    public static final class Histogram
+    {
+        /**
+         * The number of buckets, enough to cover durations beyond half an hour.
+         */
+        private static final int BUCKETS = 32;
+
+        /**
+         * The number of durations recorded in each bucket. Bucket i holds durations below 2^i microseconds.
+         */
+        private final AtomicLongArray buckets;
+        /**
+         * The number of durations recorded.
+         */
+        private final AtomicLong count;
+        /**
+         * The sum of every duration recorded, in nanoseconds.
+         */
+        private final AtomicLong total;
+        /**
+         * The longest duration recorded, in nanoseconds.
+         */
+        private final AtomicLong max;
+
+        /**
+         * Constructor for Histogram.
+         */
+        Histogram()
+        {
+            buckets = new AtomicLongArray(BUCKETS);
+            count = new AtomicLong();
+            total = new AtomicLong();
+            max = new AtomicLong();
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration, in nanoseconds
+         */
+        void record(long nanos)
+        {
+            nanos = Math.max(nanos, 0);
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos / 1000), BUCKETS - 1);
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long previous;
+            while(nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos));
+        }
+
+        /**
+         * Returns the number of durations recorded.
+         *
+         * @return the count
+         */
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        /**
+         * Returns the mean duration recorded.
+         *
+         * @return the mean, in nanoseconds, or 0 if nothing has been recorded.
+         */
+        public double getMean()
+        {
+            long count = this.count.get();
+            return count == 0 ? 0 : (double) total.get() / count;
+        }
+
+        /**
+         * Returns the longest duration recorded.
+         *
+         * @return the maximum, in nanoseconds
+         */
+        public long getMax()
+        {
+            return max.get();
+        }
+
+        /**
+         * Returns an upper bound on a percentile of the durations recorded, accurate to within a factor of two.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the upper bound, in nanoseconds, or 0 if nothing has been recorded.
+         */
+        public long getPercentile(double percentile)
+        {
+            long count = this.count.get();
+            if(count == 0)
+                return 0;
+            long target = (long) Math.ceil(count * percentile / 100), seen = 0;
+            for(int i = 0; i < BUCKETS; i++)
+            {
+                seen += buckets.get(i);
+                if(seen >= Math.max(target, 1))
+                    return Math.min((1L << i) * 1000, getMax());
+            }
+            return getMax();
+        }
+
+        /**
+         * Clears every recorded duration.
+         */
+        void reset()
+        {
+            for(int i = 0; i < BUCKETS; i++)
+                buckets.set(i, 0);
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+
+    /**
+     * Whether or not metrics are being recorded.
+     */
+    private volatile boolean enabled;
+    /**
+     * The scheduler whose missed frames are counted as dropped, or null.
+     */
+    private final FrameScheduler scheduler;
+    /**
+     * The number of missed frames the scheduler had already reported when the metrics were last reset.
+     */
+    private volatile long missedFramesBaseline;
+    /**
+     * The time spent running each frame.
+     */
+    private final Histogram frameTime;
+    /**
+     * The time between the starts of consecutive frames.
+     */
+    private final Histogram frameInterval;
+    /**
+     * The time spent painting each SPComponent.
+     */
+    private final Histogram paintTime;
+    /**
+     * The time from each input event being created to its handler being run.
+     */
+    private final Histogram inputLatency;
+    /**
+     * The number of frames which were not posted because the previous frame was still pending.
+     */
+    private final AtomicLong droppedFrames;
+    /**
+     * The number of repaint requests which were not followed by a paint before the next request.
+     */
+    private final AtomicLong coalescedFrames;
+    /**
+     * Whether or not a repaint has been requested without any paint happening since. Only accessed on the event dispatch thread.
+     */
+    private boolean repaintOutstanding;
+    /**
+     * The total nanoseconds spent drawing each layer. Guarded by itself.
+     */
+    private final HashMap<Integer, AtomicLong> layerDrawTimes;
+    /**
+     * The total nanoseconds spent drawing each component class. Guarded by layerDrawTimes.
+     */
+    private final HashMap<Class<?>, AtomicLong> classDrawTimes;
+
+    /**
+     * Constructor for FrameMetrics, for metrics which are not tied to a scheduler.
+     */
+    public FrameMetrics()
+    {
+        this(null);
+    }
+
+    /**
+     * Constructor for FrameMetrics.
+     *
+     * @param scheduler the scheduler whose missed frames are counted as dropped, or null
+     */
+    public FrameMetrics(FrameScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+        frameTime = new Histogram();
+        frameInterval = new Histogram();
+        paintTime = new Histogram();
+        inputLatency = new Histogram();
+        droppedFrames = new AtomicLong();
+        coalescedFrames = new AtomicLong();
+        layerDrawTimes = new HashMap<>();
+        classDrawTimes = new HashMap<>();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under "spp.core:type=FrameMetrics,name=[name]".
+     *
+     * @param name the name to register under
+     * @return the object name registered under
+     * @throws JMException if the name is invalid or already registered.
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("spp.core:type=FrameMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregisters metrics from the platform MBean server.
+     *
+     * @param objectName the object name they were registered under
+     * @throws JMException if nothing is registered under the name.
+     */
+    public static void unregister(ObjectName objectName) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records a frame run by the host application.
+     *
+     * @param interval the time since the previous frame started, in nanoseconds, or -1 if there was no previous frame
+     * @param time     the time spent running the frame, in nanoseconds
+     */
+    void recordFrame(long interval, long time)
+    {
+        if(interval >= 0)
+            frameInterval.record(interval);
+        frameTime.record(time);
+    }
+
+    /**
+     * Records a frame which was not posted because the previous frame was still pending.
+     */
+    void recordDroppedFrame()
+    {
+        droppedFrames.incrementAndGet();
+    }
+
+    /**
+     * Records that the host application has requested a repaint through Swing. Must be called on the event dispatch thread.
+     */
+    void recordRepaintRequest()
+    {
+        if(repaintOutstanding)
+            coalescedFrames.incrementAndGet(); // Swing never painted the previous request
+        repaintOutstanding = true;
+    }
+
+    /**
+     * Records the painting of an SPComponent. Must be called on the event dispatch thread.
+     *
+     * @param time the time spent painting, in nanoseconds
+     */
+    void recordPaint(long time)
+    {
+        repaintOutstanding = false;
+        paintTime.record(time);
+    }
+
+    /**
+     * Records the time a GraphicalComponent, or a cached layer, took to draw.
+     *
+     * @param layer the layer drawn
+     * @param type  the class of the component drawn, or null if a cached layer was drawn
+     * @param time  the time spent drawing, in nanoseconds
+     */
+    void recordDraw(int layer, Class<?> type, long time)
+    {
+        synchronized(layerDrawTimes)
+        {
+            layerDrawTimes.computeIfAbsent(layer, key -> new AtomicLong()).addAndGet(time);
+            if(type != null)
+                classDrawTimes.computeIfAbsent(type, key -> new AtomicLong()).addAndGet(time);
+        }
+    }
+
+    /**
+     * Records the dispatch of an input event to its handler.
+     *
+     * @param when the time the event was created, in milliseconds since the epoch
+     */
+    void recordInput(long when)
+    {
+        inputLatency.record((System.currentTimeMillis() - when) * 1_000_000L);
+    }
+
+    /**
+     * Returns the histogram of the time spent running each frame.
+     *
+     * @return the histogram
+     */
+    public Histogram getFrameTimeHistogram()
+    {
+        return frameTime;
+    }
+
+    /**
+     * Returns the histogram of the time between the starts of consecutive frames.
+     *
+     * @return the histogram
+     */
+    public Histogram getFrameIntervalHistogram()
+    {
+        return frameInterval;
+    }
+
+    /**
+     * Returns the histogram of the time spent painting each SPComponent.
+     *
+     * @return the histogram
+     */
+    public Histogram getPaintTimeHistogram()
+    {
+        return paintTime;
+    }
+
+    /**
+     * Returns the histogram of the time from each input event being created to its handler being run.
+     *
+     * @return the histogram
+     */
+    public Histogram getInputLatencyHistogram()
+    {
+        return inputLatency;
+    }
+
+    @Override
+    public long getFrameCount()
+    {
+        return frameTime.getCount();
+    }
+
+    @Override
+    public double getMeanFrameTime()
+    {
+        return frameTime.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP99FrameTime()
+    {
+        return frameTime.getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getMaxFrameTime()
+    {
+        return frameTime.getMax() / 1e6;
+    }
+
+    @Override
+    public double getMeanFrameInterval()
+    {
+        return frameInterval.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP99FrameInterval()
+    {
+        return frameInterval.getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getMaxFrameInterval()
+    {
+        return frameInterval.getMax() / 1e6;
+    }
+
+    @Override
+    public double getMeanPaintTime()
+    {
+        return paintTime.getMean() / 1e6;
+    }
+
+    @Override
+    public long getDroppedFrames()
+    {
+        long missed = scheduler == null ? 0 : scheduler.getMissedFrames() - missedFramesBaseline;
+        return droppedFrames.get() + missed;
+    }
+
+    @Override
+    public long getCoalescedFrames()
+    {
+        return coalescedFrames.get();
+    }
+
+    @Override
+    public double getMeanInputLatency()
+    {
+        return inputLatency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getMaxInputLatency()
+    {
+        return inputLatency.getMax() / 1e6;
+    }
+
+    @Override
+    public Map<Integer, Double> getLayerDrawTimes()
+    {
+        TreeMap<Integer, Double> times = new TreeMap<>();
+        synchronized(layerDrawTimes)
+        {
+            for(Map.Entry<Integer, AtomicLong> entry: layerDrawTimes.entrySet())
+                times.put(entry.getKey(), entry.getValue().get() / 1e6);
+        }
+        return times;
+    }
+
+    @Override
+    public Map<String, Double> getClassDrawTimes()
+    {
+        TreeMap<String, Double> times = new TreeMap<>();
+        synchronized(layerDrawTimes)
+        {
+            for(Map.Entry<Class<?>, AtomicLong> entry: classDrawTimes.entrySet())
+                times.put(entry.getKey().getName(), entry.getValue().get() / 1e6);
+        }
+        return times;
+    }
+
+    @Override
+    public void reset()
+    {
+        frameTime.reset();
+        frameInterval.reset();
+        paintTime.reset();
+        inputLatency.reset();
+        droppedFrames.set(0);
+        coalescedFrames.set(0);
+        if(scheduler != null)
+            missedFramesBaseline = scheduler.getMissedFrames();
+        synchronized(layerDrawTimes)
+        {
+            layerDrawTimes.clear();
+            classDrawTimes.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package spp.core;
+
+import java.util.Map;
+
+/**
+ * The management interface of FrameMetrics, exported over JMX so that frame timings can be watched from tools such as JConsole.
+ * All times are in milliseconds.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public interface FrameMetricsMXBean
+{
+    /**
+     * Returns whether or not metrics are being recorded.
+     *
+     * @return whether or not metrics are enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Sets whether or not metrics are being recorded.
+     *
+     * @param enabled whether or not metrics are enabled
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the number of frames recorded.
+     *
+     * @return the number of frames
+     */
+    long getFrameCount();
+
+    /**
+     * Returns the mean time spent running a frame on the event dispatch thread.
+     *
+     * @return the mean frame time
+     */
+    double getMeanFrameTime();
+
+    /**
+     * Returns the 99th percentile of the time spent running a frame on the event dispatch thread.
+     *
+     * @return the 99th percentile frame time
+     */
+    double getP99FrameTime();
+
+    /**
+     * Returns the longest time spent running a frame on the event dispatch thread.
+     *
+     * @return the maximum frame time
+     */
+    double getMaxFrameTime();
+
+    /**
+     * Returns the mean time between the starts of consecutive frames.
+     *
+     * @return the mean frame interval
+     */
+    double getMeanFrameInterval();
+
+    /**
+     * Returns the 99th percentile of the time between the starts of consecutive frames.
+     *
+     * @return the 99th percentile frame interval
+     */
+    double getP99FrameInterval();
+
+    /**
+     * Returns the longest time between the starts of consecutive frames.
+     *
+     * @return the maximum frame interval
+     */
+    double getMaxFrameInterval();
+
+    /**
+     * Returns the mean time spent painting a single SPComponent.
+     *
+     * @return the mean paint time
+     */
+    double getMeanPaintTime();
+
+    /**
+     * Returns the number of frames which were never run, because their deadline was missed or the previous frame was still pending.
+     *
+     * @return the number of dropped frames
+     */
+    long getDroppedFrames();
+
+    /**
+     * Returns the number of repaint requests which Swing coalesced into a later paint, rather than honoring.
+     *
+     * @return the number of coalesced frames
+     */
+    long getCoalescedFrames();
+
+    /**
+     * Returns the mean time from an input event being created by AWT to its handler being run.
+     *
+     * @return the mean input latency
+     */
+    double getMeanInputLatency();
+
+    /**
+     * Returns the longest time from an input event being created by AWT to its handler being run.
+     *
+     * @return the maximum input latency
+     */
+    double getMaxInputLatency();
+
+    /**
+     * Returns the total time spent drawing each layer.
+     *
+     * @return the draw time of each layer
+     */
+    Map<Integer, Double> getLayerDrawTimes();
+
+    /**
+     * Returns the total time spent drawing each class of GraphicalComponent.
+     *
+     * @return the draw time of each component class, by class name
+     */
+    Map<String, Double> getClassDrawTimes();
+
+    /**
+     * Clears every recorded metric.
+     */
+    void reset();
+}
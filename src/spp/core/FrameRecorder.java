@@ -0,0 +1,429 @@
+package spp.core;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Records the frames of an application to disk without stalling the thread rendering them.
+ * Each captured frame is copied into a preallocated ring buffer of images, and a background thread encodes the buffered
+ * frames either as a sequence of PNG files or as a single raw stream of ARGB pixels, written through a FileChannel.
+ * When the encoder falls behind and the ring buffer fills up, new frames are either dropped or wait for a free slot,
+ * depending on the backpressure policy. Frames must be captured from a single thread, which should also be the one stopping the recorder.
+ * <p>
+ * The raw stream starts with a header of the magic bytes "SPPR" followed by the width and height as big-endian ints.
+ * Every frame then follows as its capture time (System.nanoTime(), as a big-endian long) and its pixels as big-endian ARGB ints, row by row.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class FrameRecorder
+{
+    /**
+     * The formats frames can be encoded in.
+     */
+    public enum Format
+    {
+        /**
+         * One PNG file per frame, named frame-000000.png, frame-000001.png, and so on, inside the output directory.
+         */
+        PNG_SEQUENCE,
+        /**
+         * A single file of uncompressed frames, which is much cheaper to encode.
+         */
+        RAW
+    }
+
+    /**
+     * What happens to a captured frame when every slot of the ring buffer is waiting to be encoded.
+     */
+    public enum BackpressurePolicy
+    {
+        /**
+         * The frame is dropped, so capturing never waits on the encoder.
+         */
+        DROP,
+        /**
+         * Capturing waits for the encoder to free a slot, so no frame is ever lost.
+         */
+        BLOCK
+    }
+
+    /**
+     * The magic bytes at the start of a raw stream.
+     */
+    private static final int RAW_MAGIC = ('S' << 24) | ('P' << 16) | ('P' << 8) | 'R';
+
+    /**
+     * The file (raw stream) or directory (PNG sequence) frames are written to.
+     */
+    private final Path output;
+    /**
+     * The format frames are encoded in.
+     */
+    private final Format format;
+    /**
+     * What happens to captured frames when the ring buffer is full.
+     */
+    private final BackpressurePolicy policy;
+    /**
+     * The ring buffer of frames waiting to be encoded.
+     */
+    private final BufferedImage[] slots;
+    /**
+     * The capture time of the frame in each slot, in nanoseconds.
+     */
+    private final long[] timestamps;
+    /**
+     * One permit for each slot which is free to capture into.
+     */
+    private final Semaphore free;
+    /**
+     * One permit for each slot waiting to be encoded, plus one when the recorder is stopped.
+     */
+    private final Semaphore filled;
+    /**
+     * The background thread encoding frames.
+     */
+    private Thread encoder;
+    /**
+     * The channel the raw stream is written to, or null for a PNG sequence.
+     */
+    private FileChannel channel;
+    /**
+     * The number of frames captured into the ring buffer. Only written by the capturing thread.
+     */
+    private volatile long capturedFrames;
+    /**
+     * The number of frames dropped because the ring buffer was full.
+     */
+    private volatile long droppedFrames;
+    /**
+     * The number of frames encoded. Only written by the encoder thread.
+     */
+    private volatile long encodedFrames;
+    /**
+     * The first failure encountered while encoding, after which frames are no longer written.
+     */
+    private volatile IOException failure;
+    /**
+     * Whether or not the recorder is currently accepting frames.
+     */
+    private volatile boolean recording;
+
+    /**
+     * Constructor for FrameRecorder.
+     *
+     * @param output   the file (raw stream) or directory (PNG sequence) to write frames to
+     * @param format   the format to encode frames in
+     * @param width    the width of the recorded frames
+     * @param height   the height of the recorded frames
+     * @param capacity the number of frames the ring buffer holds
+     * @param policy   what happens to captured frames when the ring buffer is full
+     * @throws IllegalArgumentException if the size or capacity is not positive.
+     */
+    public FrameRecorder(Path output, Format format, int width, int height, int capacity, BackpressurePolicy policy) throws IllegalArgumentException
+    {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Frame size must be positive: " + width + "x" + height);
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.output = output;
+        this.format = format;
+        this.policy = policy;
+        slots = new BufferedImage[capacity];
+        for(int i = 0; i < capacity; i++)
+            slots[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        timestamps = new long[capacity];
+        free = new Semaphore(capacity);
+        filled = new Semaphore(0);
+    }
+
+    /**
+     * Opens the output and starts the encoder thread.
+     *
+     * @throws IOException if the output cannot be opened.
+     * @throws IllegalStateException if the recorder has already been started.
+     */
+    public synchronized void start() throws IOException, IllegalStateException
+    {
+        if(encoder != null)
+            throw new IllegalStateException("Recorder has already been started");
+        if(format == Format.RAW)
+        {
+            channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(RAW_MAGIC).putInt(getWidth()).putInt(getHeight());
+            header.flip();
+            writeFully(header);
+        }
+        else
+            Files.createDirectories(output);
+
+        encoder = new Thread(this::encode, "FrameRecorder Encoder");
+        encoder.setDaemon(true);
+        recording = true;
+        encoder.start();
+    }
+
+    /**
+     * Stops accepting frames, waits for every buffered frame to be encoded, and closes the output.
+     *
+     * @throws IOException if encoding any frame failed, or the output cannot be closed.
+     * @throws InterruptedException if interrupted while waiting for the encoder.
+     */
+    public synchronized void stop() throws IOException, InterruptedException
+    {
+        if(encoder == null || !recording)
+            return;
+        recording = false;
+        filled.release(); // Wakes the encoder once it has caught up
+        encoder.join();
+        if(channel != null)
+            channel.close();
+        if(failure != null)
+            throw failure;
+    }
+
+    /**
+     * Captures a frame by copying an image into the ring buffer. Parts of the image outside of the frame size are cropped.
+     *
+     * @param frame the image
+     * @return whether or not the frame was captured, rather than dropped
+     */
+    public boolean capture(BufferedImage frame)
+    {
+        BufferedImage slot = acquireSlot();
+        if(slot == null)
+            return false;
+        draw(slot, g -> {
+            g.setComposite(AlphaComposite.Src); // Copies the pixels exactly, rather than blending them
+            g.drawImage(frame, 0, 0, null);
+        });
+        publishSlot();
+        return true;
+    }
+
+    /**
+     * Captures a frame by painting a component into the ring buffer. Must be called on the thread the component is painted on.
+     *
+     * @param component the component
+     * @return whether or not the frame was captured, rather than dropped
+     */
+    public boolean capture(Component component)
+    {
+        BufferedImage slot = acquireSlot();
+        if(slot == null)
+            return false;
+        draw(slot, component::printAll);
+        publishSlot();
+        return true;
+    }
+
+    /**
+     * Claims the next slot of the ring buffer, according to the backpressure policy.
+     *
+     * @return the slot, or null if the frame is dropped
+     */
+    private BufferedImage acquireSlot()
+    {
+        if(!recording)
+            return null;
+        if(policy == BackpressurePolicy.BLOCK)
+            free.acquireUninterruptibly();
+        else if(!free.tryAcquire())
+        {
+            droppedFrames++;
+            return null;
+        }
+        int index = (int) (capturedFrames % slots.length);
+        timestamps[index] = System.nanoTime();
+        return slots[index];
+    }
+
+    /**
+     * Hands the slot claimed by acquireSlot to the encoder.
+     */
+    private void publishSlot()
+    {
+        capturedFrames++;
+        filled.release();
+    }
+
+    /**
+     * Clears a slot and draws into it.
+     *
+     * @param slot    the slot
+     * @param painter draws the frame
+     */
+    private static void draw(BufferedImage slot, Consumer<Graphics2D> painter)
+    {
+        Graphics2D g = slot.createGraphics();
+        try
+        {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, slot.getWidth(), slot.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            g.clipRect(0, 0, slot.getWidth(), slot.getHeight());
+            painter.accept(g);
+        }
+        finally
+        {
+            g.dispose();
+        }
+    }
+
+    /**
+     * The main loop of the encoder thread, which encodes frames in the order they were captured until the recorder is stopped.
+     */
+    private void encode()
+    {
+        ByteBuffer buffer = format == Format.RAW ?
+                ByteBuffer.allocateDirect(8 + getWidth() * getHeight() * 4).order(ByteOrder.BIG_ENDIAN) : null;
+        while(true)
+        {
+            filled.acquireUninterruptibly();
+            if(encodedFrames == capturedFrames)
+                return; // Only reachable through the permit released by stop()
+
+            int index = (int) (encodedFrames % slots.length);
+            if(failure == null)
+            {
+                try
+                {
+                    if(format == Format.RAW)
+                        writeRaw(buffer, slots[index], timestamps[index]);
+                    else
+                        writePNG(slots[index], encodedFrames);
+                }
+                catch(IOException e)
+                {
+                    failure = e; // Later frames are still consumed, so capturing never blocks forever
+                }
+            }
+            encodedFrames++;
+            free.release();
+        }
+    }
+
+    /**
+     * Writes a frame to the raw stream.
+     *
+     * @param buffer    the reusable buffer of a single frame
+     * @param frame     the frame
+     * @param timestamp the capture time of the frame
+     * @throws IOException if the frame cannot be written.
+     */
+    private void writeRaw(ByteBuffer buffer, BufferedImage frame, long timestamp) throws IOException
+    {
+        buffer.clear();
+        buffer.putLong(timestamp);
+        IntBuffer pixels = buffer.asIntBuffer();
+        pixels.put(((DataBufferInt) frame.getRaster().getDataBuffer()).getData());
+        buffer.position(buffer.position() + pixels.position() * 4);
+        buffer.flip();
+        writeFully(buffer);
+    }
+
+    /**
+     * Writes a frame as the next file of the PNG sequence.
+     *
+     * @param frame  the frame
+     * @param number the number of the frame
+     * @throws IOException if the frame cannot be written.
+     */
+    private void writePNG(BufferedImage frame, long number) throws IOException
+    {
+        Path file = output.resolve(String.format("frame-%06d.png", number));
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            OutputStream stream = Channels.newOutputStream(channel))
+        {
+            if(!ImageIO.write(frame, "png", stream))
+                throw new IOException("No PNG encoder available");
+        }
+    }
+
+    /**
+     * Writes the remaining contents of a buffer to the raw stream.
+     *
+     * @param buffer the buffer
+     * @throws IOException if the buffer cannot be written.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Returns whether or not the recorder is currently accepting frames.
+     *
+     * @return whether or not the recorder is recording
+     */
+    public boolean isRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * Returns the width of the recorded frames.
+     *
+     * @return the width
+     */
+    public int getWidth()
+    {
+        return slots[0].getWidth();
+    }
+
+    /**
+     * Returns the height of the recorded frames.
+     *
+     * @return the height
+     */
+    public int getHeight()
+    {
+        return slots[0].getHeight();
+    }
+
+    /**
+     * Returns the number of frames captured into the ring buffer.
+     *
+     * @return the number of captured frames
+     */
+    public long getCapturedFrames()
+    {
+        return capturedFrames;
+    }
+
+    /**
+     * Returns the number of frames dropped because the ring buffer was full.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    /**
+     * Returns the number of frames encoded so far.
+     *
+     * @return the number of encoded frames
+     */
+    public long getEncodedFrames()
+    {
+        return encodedFrames;
+    }
+}
@@ -0,0 +1,248 @@
+package spp.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A precise, low-CPU frame timer which runs a task at a fixed framerate on its own thread.
+ * Frame deadlines are tracked using System.nanoTime(), and the thread parks between frames instead of spinning,
+ * only yielding for the final fraction of a millisecond before each deadline to keep jitter low.
+ * While inactive, the thread stays parked and uses no CPU at all.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class FrameScheduler
+{
+    /**
+     * Determines what happens when the frame task falls behind by one or more frames.
+     */
+    public enum MissedFramePolicy
+    {
+        /**
+         * Missed frames are dropped, and the next frame is run on the next deadline.
+         */
+        SKIP,
+        /**
+         * Missed frames are run back-to-back until the timer has caught up, up to the maximum catch-up count.
+         * The frame task must run each frame to completion for this to differ from SKIP: a task which only posts its
+         * work elsewhere (such as a HostApplication repainting through Swing) coalesces the catch-up frames into one.
+         */
+        CATCH_UP
+    }
+
+    /**
+     * How long before a deadline the thread stops parking and starts yielding, in nanoseconds.
+     * Parking is only accurate to around a millisecond on most platforms.
+     */
+    private static final long SPIN_THRESHOLD = 1_000_000L;
+
+    /**
+     * The task run once per frame.
+     */
+    private final Runnable frameTask;
+    /**
+     * The thread which runs the frame task.
+     */
+    private final Thread thread;
+    /**
+     * Whether or not the timer is currently active.
+     */
+    private volatile boolean active;
+    /**
+     * Set whenever the timing of the scheduler changes, so the frame thread re-aligns its deadlines.
+     */
+    private volatile boolean resetRequested;
+    /**
+     * The length of a single frame, in nanoseconds.
+     */
+    private volatile long frameInterval;
+    /**
+     * The policy used when frames are missed.
+     */
+    private volatile MissedFramePolicy missedFramePolicy;
+    /**
+     * The maximum number of frames run back-to-back when catching up.
+     */
+    private volatile int maxCatchUpFrames;
+    /**
+     * The deadline of the next frame (nanoseconds). Only accessed by the frame thread.
+     */
+    private long nextFrame;
+    /**
+     * The number of frame deadlines which have passed without their frame being run. Only written by the frame thread.
+     */
+    private volatile long missedFrames;
+
+    /**
+     * Constructor for FrameScheduler. The scheduler starts out inactive, at 60 frames per second.
+     *
+     * @param name      the name of the frame thread
+     * @param frameTask the task run once per frame
+     */
+    public FrameScheduler(String name, Runnable frameTask)
+    {
+        this.frameTask = frameTask;
+        missedFramePolicy = MissedFramePolicy.SKIP;
+        maxCatchUpFrames = 5;
+        setFPS(60);
+
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The main loop of the frame thread.
+     */
+    private void run()
+    {
+        while(true)
+        {
+            if(!active)
+            {
+                LockSupport.park(this);
+                continue;
+            }
+            if(resetRequested)
+            {
+                resetRequested = false;
+                nextFrame = System.nanoTime();
+            }
+            if(!awaitDeadline(nextFrame))
+                continue;
+
+            long interval = frameInterval;
+            long missed = (System.nanoTime() - nextFrame) / interval;
+            long frames = 1;
+            if(missedFramePolicy == MissedFramePolicy.CATCH_UP)
+                frames = Math.min(missed + 1, Math.max(maxCatchUpFrames, 1));
+            nextFrame += (missed + 1) * interval;
+            if(missed + 1 > frames)
+                missedFrames += missed + 1 - frames;
+
+            for(long i = 0; i < frames && active && !resetRequested; i++)
+                frameTask.run();
+        }
+    }
+
+    /**
+     * Parks (and then yields) the frame thread until the given deadline is reached.
+     *
+     * @param deadline the deadline, in terms of System.nanoTime()
+     * @return false if the wait was interrupted by the scheduler being deactivated or reset.
+     */
+    private boolean awaitDeadline(long deadline)
+    {
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0)
+        {
+            if(!active || resetRequested)
+                return false;
+            if(remaining > SPIN_THRESHOLD)
+                LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD);
+            else
+                Thread.yield();
+        }
+        return active && !resetRequested;
+    }
+
+    /**
+     * Sets the scheduler to either be active or inactive. Activating the scheduler restarts frame timing from the current time.
+     *
+     * @param active whether or not the scheduler should be active
+     */
+    public void setActive(boolean active)
+    {
+        if(active)
+            resetRequested = true;
+        this.active = active;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns whether or not the scheduler is active.
+     *
+     * @return whether or not the scheduler is active
+     */
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * Sets the framerate of this scheduler.
+     *
+     * @param FPS the framerate
+     * @throws IllegalArgumentException if the framerate is not positive.
+     */
+    public void setFPS(int FPS) throws IllegalArgumentException
+    {
+        if(FPS <= 0)
+            throw new IllegalArgumentException("FPS must be positive: " + FPS);
+        frameInterval = 1_000_000_000L / FPS;
+        resetRequested = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns the length of a single frame, in nanoseconds.
+     *
+     * @return the frame interval
+     */
+    public long getFrameInterval()
+    {
+        return frameInterval;
+    }
+
+    /**
+     * Returns the number of frame deadlines which have passed without their frame being run, either because they were skipped
+     * or because they exceeded the maximum number of catch-up frames.
+     *
+     * @return the number of missed frames
+     */
+    public long getMissedFrames()
+    {
+        return missedFrames;
+    }
+
+    /**
+     * Sets the policy used when frames are missed.
+     *
+     * @param missedFramePolicy the policy
+     */
+    public void setMissedFramePolicy(MissedFramePolicy missedFramePolicy)
+    {
+        this.missedFramePolicy = missedFramePolicy;
+    }
+
+    /**
+     * Returns the policy used when frames are missed.
+     *
+     * @return the policy
+     */
+    public MissedFramePolicy getMissedFramePolicy()
+    {
+        return missedFramePolicy;
+    }
+
+    /**
+     * Sets the maximum number of frames run back-to-back when catching up under the CATCH_UP policy.
+     * Any frames missed beyond this are dropped.
+     *
+     * @param maxCatchUpFrames the maximum number of frames
+     */
+    public void setMaxCatchUpFrames(int maxCatchUpFrames)
+    {
+        this.maxCatchUpFrames = maxCatchUpFrames;
+    }
+
+    /**
+     * Returns the maximum number of frames run back-to-back when catching up.
+     *
+     * @return the maximum number of frames
+     */
+    public int getMaxCatchUpFrames()
+    {
+        return maxCatchUpFrames;
+    }
+}
@@ -3,7 +3,9 @@ package spp.core;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
-import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * A dynamic counterpart to the JComponent meant to represent general graphical elements within a container,
@@ -16,20 +18,32 @@ import java.util.HashSet;
  */
 public class GraphicalComponent implements Comparable<GraphicalComponent>
 {
+    /**
+     * Atomically claims the owner of a component, so that it can only be added to one panel at a time, from any thread.
+     */
+    private static final AtomicReferenceFieldUpdater<GraphicalComponent, SPComponent> OWNER =
+            AtomicReferenceFieldUpdater.newUpdater(GraphicalComponent.class, SPComponent.class, "owner");
+
+    /**
+     * Atomically claims the removal of a component, so that it is only queued for removal once.
+     */
+    private static final AtomicIntegerFieldUpdater<GraphicalComponent> REMOVAL =
+            AtomicIntegerFieldUpdater.newUpdater(GraphicalComponent.class, "removalPending");
+
     /**
      * All the key codes that are currently being held
      */
-    private HashSet<Integer> activeKeys;
+    private final InputSet activeKeys;
 
     /**
      * All the mouse button codes that are currently being held
      */
-    private HashSet<Integer> activeMousePresses;
+    private final InputSet activeMousePresses;
 
     /**
      * All the mouse buttons that have specifically triggered / activated this components' hitbox
      */
-    private HashSet<Integer> activeHitboxActivations;
+    private final InputSet activeHitboxActivations;
 
     /**
      * The Hitbox for this specific component.
@@ -41,11 +55,77 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
      */
     private SPComponent parent;
 
+    /**
+     * The screen which this component has been added to, set as soon as addComponent is called (rather than once the
+     * addition is processed) and cleared once the removal is processed. Null if the component is free to be added.
+     */
+    private volatile SPComponent owner;
+
+    /**
+     * 1 if this component has been queued for removal from its owner, 0 otherwise.
+     */
+    private volatile int removalPending;
+
+    /**
+     * The pool this component is returned to once it has been removed, or null if it was not created by a pool.
+     */
+    ComponentPool<?> pool;
+
     /**
      * An identifier for the layer of the component. Necessary when handling multi-layered components, with specific components on a higher level than others.
      */
     private final int layer;
 
+    /**
+     * The previous component in the parent's layer order, maintained by LayeredComponentList.
+     */
+    GraphicalComponent previous;
+
+    /**
+     * The next component in the parent's layer order, maintained by LayeredComponentList.
+     */
+    GraphicalComponent next;
+
+    /**
+     * The layer bucket this component is stored in, or null if it is not inside of a list.
+     */
+    LayeredComponentList.Bucket bucket;
+
+    /**
+     * The range of grid cells this component's hitbox is indexed under, or null if it is not inside of a grid cell.
+     */
+    Rectangle hitboxCells;
+
+    /**
+     * The click of the hitbox grid this component's hitbox was last marked as a candidate for.
+     */
+    int candidateMark;
+
+    /**
+     * The bounds this component had when it was last painted, or null if it has not been painted with known bounds.
+     */
+    Rectangle paintedBounds;
+
+    /**
+     * Whether or not this component has been marked as needing to be repainted since the last paint.
+     */
+    boolean dirty;
+
+    /**
+     * Whether or not this component's update can run on a worker thread, in parallel with other independent components.
+     */
+    private boolean independent;
+
+    /**
+     * Whether or not this component keeps updating on every tick when the quality governor reduces update rates.
+     */
+    private boolean critical;
+
+    /**
+     * Update time (seconds) skipped while the quality governor reduces update rates, passed on to the next update.
+     */
+    double deferredTime;
+
     /**
      * Default Constructor for GraphicalComponent.
      */
@@ -62,9 +142,10 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
     public GraphicalComponent(int layer)
     {
         this.layer = layer;
-        activeHitboxActivations = new HashSet<>();
-        activeMousePresses = new HashSet<>();
-        activeKeys = new HashSet<>();
+        activeHitboxActivations = new InputSet();
+        activeMousePresses = new InputSet();
+        activeKeys = new InputSet();
+        critical = true;
     }
 
     @Override
@@ -93,6 +174,109 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
 
     }
 
+    /**
+     * Interpolated version of the draw function. By default, this simply calls draw(g).
+     * Can be overridden to render the component in between its previous and current update ticks.
+     *
+     * @param g     the graphics instance
+     * @param alpha how far (from 0 to 1) the frame lies between the previous update tick and the next one
+     */
+    public void draw(Graphics g, double alpha)
+    {
+        draw(g);
+    }
+
+    /**
+     * Returns the screen bounds (in the coordinates of the parent SPComponent) that everything this component draws lies within.
+     * Used to repaint only the parts of the screen that have changed, and to skip drawing components outside of the clip or viewport.
+     * Under dirty region repainting, every component must call markDirty() whenever its appearance or bounds change.
+     *
+     * @return the bounds, or null if this component may draw anywhere.
+     */
+    public Rectangle getBounds()
+    {
+        return null;
+    }
+
+    /**
+     * Records the bounds this component has just been painted with.
+     *
+     * @param bounds the bounds, or null if this component may have drawn anywhere
+     */
+    void recordPaintedBounds(Rectangle bounds)
+    {
+        if(bounds == null)
+            paintedBounds = null;
+        else if(paintedBounds == null)
+            paintedBounds = new Rectangle(bounds);
+        else
+            paintedBounds.setBounds(bounds);
+    }
+
+    /**
+     * Marks this component as needing to be repainted. Both the bounds it was last painted with and its current bounds are repainted.
+     * Necessary when the parent uses dirty region repainting, or when this component's layer is cached.
+     */
+    public void markDirty()
+    {
+        if(parent != null)
+            parent.markDirty(this);
+    }
+
+    /**
+     * Called once per update tick by the host application, at a fixed rate independent of the framerate.
+     * Per-frame logic such as movement belongs here rather than in draw.
+     *
+     * @param dt the length of the tick, in seconds
+     */
+    public void update(double dt)
+    {
+    }
+
+    /**
+     * Marks whether or not this component's update only touches its own state, so that it can be run on a worker thread
+     * when its parent has parallel updates enabled. Independent components are updated before all other components, and
+     * may only call addComponent, removeComponent, markDirty and hitboxMoved on anything outside of themselves.
+     *
+     * @param independent whether or not this component is independent
+     */
+    public void setIndependent(boolean independent)
+    {
+        this.independent = independent;
+    }
+
+    /**
+     * Returns whether or not this component's update can run on a worker thread.
+     *
+     * @return whether or not this component is independent
+     */
+    public boolean isIndependent()
+    {
+        return independent;
+    }
+
+    /**
+     * Marks whether or not this component must be updated on every tick. Once a QualityGovernor has degraded quality far enough,
+     * non-critical components (such as ambient effects) are only updated every few ticks, with the skipped time added to their next update.
+     * Components are critical by default.
+     *
+     * @param critical whether or not this component is critical
+     */
+    public void setCritical(boolean critical)
+    {
+        this.critical = critical;
+    }
+
+    /**
+     * Returns whether or not this component must be updated on every tick.
+     *
+     * @return whether or not this component is critical
+     */
+    public boolean isCritical()
+    {
+        return critical;
+    }
+
     /**
      * Called whenever this component's container receives a mouse press event, if not forcibly overridden by other components.
      *
@@ -102,6 +286,24 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
     {
     }
 
+    /**
+     * Called whenever this component's container receives a mouse motion event while no mouse button is held.
+     *
+     * @param event the mouse event
+     */
+    public void mouseMoved(MouseEvent event)
+    {
+    }
+
+    /**
+     * Called whenever this component's container receives a mouse motion event while a mouse button is held.
+     *
+     * @param event the mouse event
+     */
+    public void mouseDragged(MouseEvent event)
+    {
+    }
+
     /**
      * Called whenever this component's container receives a key press event, if not forcibly overridden by other components.
      *
@@ -151,6 +353,80 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
         this.parent = parent;
     }
 
+    /**
+     * Claims this component for a panel, if it does not already belong to one.
+     *
+     * @param panel the panel
+     * @return whether or not the claim succeeded
+     */
+    boolean claimOwner(SPComponent panel)
+    {
+        return OWNER.compareAndSet(this, null, panel);
+    }
+
+    /**
+     * Claims the removal of this component from a panel, if it belongs to the panel and is not already being removed.
+     *
+     * @param panel the panel
+     * @return whether or not the claim succeeded
+     */
+    boolean claimRemoval(SPComponent panel)
+    {
+        return owner == panel && REMOVAL.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Returns whether or not this component has been claimed by a panel, and not yet released by its removal.
+     *
+     * @return whether or not this component is owned
+     */
+    boolean isOwned()
+    {
+        return owner != null;
+    }
+
+    /**
+     * Releases this component from its owner once its removal has been processed, so it can be added again.
+     */
+    void releaseOwner()
+    {
+        removalPending = 0;
+        owner = null;
+    }
+
+    /**
+     * Clears the input, painting and update state of this component and calls reset(), before it is returned to its pool.
+     */
+    void recycle()
+    {
+        deferredTime = 0;
+        activeKeys.releaseAll();
+        activeMousePresses.releaseAll();
+        activeHitboxActivations.releaseAll();
+        paintedBounds = null;
+        dirty = false;
+        reset();
+    }
+
+    /**
+     * Called when this component is returned to its pool after being removed, so that it can be reused as if newly constructed.
+     * Pooled components should override this to restore their own fields (position, velocity, lifetime, etc).
+     * Only called for components acquired from a ComponentPool.
+     */
+    public void reset()
+    {
+    }
+
+    /**
+     * Returns the pool this component is returned to once it has been removed.
+     *
+     * @return the pool, or null if this component was not created by a pool.
+     */
+    public ComponentPool<?> getPool()
+    {
+        return pool;
+    }
+
     /**
      * Adds another GraphicalComponent to this component's parent.
      *
@@ -200,24 +476,35 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
     public void setHitbox(GraphicalHitbox hitbox)
     {
         this.hitbox = hitbox;
+        hitboxMoved();
+    }
+
+    /**
+     * Notifies this component's parent that the bounds of its hitbox have changed, so that clicks are tested against the new bounds.
+     * Must be called whenever a hitbox which reports its bounds is moved or resized.
+     */
+    public void hitboxMoved()
+    {
+        if(parent != null)
+            parent.hitboxMoved(this);
     }
 
     /**
-     * Returns the list of active keys being held.
+     * Returns a read-only view of the active keys being held.
      *
-     * @return the list of keys
+     * @return the set of keys
      */
-    public HashSet<Integer> getActiveKeys()
+    public Set<Integer> getActiveKeys()
     {
         return activeKeys;
     }
 
     /**
-     * Returns the list of active mouse buttons being held
+     * Returns a read-only view of the active mouse buttons being held
      *
-     * @return the list of mouse presses
+     * @return the set of mouse presses
      */
-    public HashSet<Integer> getActiveMousePresses()
+    public Set<Integer> getActiveMousePresses()
     {
         return activeMousePresses;
     }
@@ -230,7 +517,7 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
      */
     public boolean isKeyHeld(int keyCode)
     {
-        return activeKeys.contains(keyCode);
+        return activeKeys.isHeld(keyCode);
     }
 
     /**
@@ -241,19 +528,82 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
      */
     public boolean isMouseButtonHeld(int buttonCode)
     {
-        return activeMousePresses.contains(buttonCode);
+        return activeMousePresses.isHeld(buttonCode);
     }
 
     /**
-     * Returns the list of mouse buttons that have been clicked inside of this components' hitbox without being released yet.
+     * Returns a read-only view of the mouse buttons that have been clicked inside of this components' hitbox without being released yet.
      *
-     * @return the list of mouse buttons
+     * @return the set of mouse buttons
      */
-    public HashSet<Integer> getActiveHitboxActivations()
+    public Set<Integer> getActiveHitboxActivations()
     {
         return activeHitboxActivations;
     }
 
+    /**
+     * Marks a key as held, on behalf of the SPComponent dispatching input.
+     *
+     * @param keyCode the key
+     */
+    void pressKey(int keyCode)
+    {
+        activeKeys.press(keyCode);
+    }
+
+    /**
+     * Marks a key as no longer held, on behalf of the SPComponent dispatching input.
+     *
+     * @param keyCode the key
+     * @return false if the key was not held.
+     */
+    boolean releaseKey(int keyCode)
+    {
+        return activeKeys.release(keyCode);
+    }
+
+    /**
+     * Marks a mouse button as held, on behalf of the SPComponent dispatching input.
+     *
+     * @param buttonCode the mouse button
+     */
+    void pressMouseButton(int buttonCode)
+    {
+        activeMousePresses.press(buttonCode);
+    }
+
+    /**
+     * Marks a mouse button as no longer held, on behalf of the SPComponent dispatching input.
+     *
+     * @param buttonCode the mouse button
+     * @return false if the mouse button was not held.
+     */
+    boolean releaseMouseButton(int buttonCode)
+    {
+        return activeMousePresses.release(buttonCode);
+    }
+
+    /**
+     * Marks a mouse button as having activated this component's hitbox, on behalf of the SPComponent dispatching input.
+     *
+     * @param buttonCode the mouse button
+     */
+    void activateHitbox(int buttonCode)
+    {
+        activeHitboxActivations.press(buttonCode);
+    }
+
+    /**
+     * Marks a mouse button as no longer activating this component's hitbox, on behalf of the SPComponent dispatching input.
+     *
+     * @param buttonCode the mouse button
+     * @return false if the mouse button had not activated the hitbox.
+     */
+    boolean releaseHitbox(int buttonCode)
+    {
+        return activeHitboxActivations.release(buttonCode);
+    }
+
     /**
      * Returns whether or not a specific mouse button has been clicked inside of this components' hitbox without being released yet.
      *
@@ -262,7 +612,7 @@ public class GraphicalComponent implements Comparable<GraphicalComponent>
      */
     public boolean isHitboxHeld(int buttonCode)
     {
-        return activeHitboxActivations.contains(buttonCode);
+        return activeHitboxActivations.isHeld(buttonCode);
     }
 
     /**
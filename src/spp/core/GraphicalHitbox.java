@@ -1,5 +1,6 @@
 package spp.core;
 
+import java.awt.*;
 import java.awt.event.MouseEvent;
 
 /**
@@ -31,4 +32,16 @@ public interface GraphicalHitbox
      * @param me The mouse event being fired
      */
     void whenReleased(MouseEvent me);
+
+    /**
+     * Returns an axis-aligned bounding box (in the coordinates of the parent SPComponent) that fully contains this hitbox.
+     * Hitboxes with bounds are kept in a spatial index, and are only tested for clicks landing inside of their bounds.
+     * Whenever the bounds change, GraphicalComponent.hitboxMoved() must be called so the index can be updated.
+     *
+     * @return the bounding box, or null if this hitbox should be tested for every click.
+     */
+    default Rectangle getBounds()
+    {
+        return null;
+    }
 }
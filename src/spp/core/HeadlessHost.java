@@ -0,0 +1,194 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Runs a HostApplication without a window or a wall-clock timer, rendering each frame into a BufferedImage.
+ * Frames are stepped manually on a virtual clock, which advances by exactly one frame interval per step, so a scene
+ * always produces the same frames no matter how fast it is stepped. Works under java.awt.headless=true, for rendering
+ * scenes on servers (thumbnails, previews) and for performance regression tests.
+ * The host and its panels must only be accessed from the thread stepping the frames, and must not be added to a window.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class HeadlessHost
+{
+    /**
+     * The host application being run.
+     */
+    private final HostApplication host;
+    /**
+     * The image every frame is rendered into.
+     */
+    private final BufferedImage image;
+    /**
+     * The current time on the virtual clock, in nanoseconds.
+     */
+    private long clock;
+    /**
+     * The time the virtual clock advances by for each frame, in nanoseconds.
+     */
+    private long frameInterval;
+    /**
+     * The number of frames stepped so far.
+     */
+    private long frameCount;
+
+    /**
+     * Constructor for HeadlessHost, stepping at 60 frames per second of virtual time.
+     *
+     * @param width  the width of the rendered frames
+     * @param height the height of the rendered frames
+     */
+    public HeadlessHost(int width, int height)
+    {
+        host = new HostApplication(false); // Frames are only run by step()
+        host.setSize(width, height);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        setFPS(60);
+    }
+
+    /**
+     * Returns the host application being run, to which screens are added as usual.
+     *
+     * @return the host application
+     */
+    public HostApplication getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Sets the rate at which frames are stepped, in frames per second of virtual time, which also becomes the host's framerate.
+     * When equal to the host's tick rate, every frame runs exactly one update tick; at lower rates, every frame runs all of
+     * the ticks its step spans, so the simulation advances by the same amount of virtual time at any rate.
+     *
+     * @param FPS the framerate
+     * @throws IllegalArgumentException if the framerate is not positive.
+     */
+    public void setFPS(int FPS) throws IllegalArgumentException
+    {
+        if(FPS <= 0)
+            throw new IllegalArgumentException("FPS must be positive: " + FPS);
+        frameInterval = 1_000_000_000L / FPS;
+        host.setFPS(FPS); // Paint schedules and the quality governor are measured against the host's frame interval
+    }
+
+    /**
+     * Advances the virtual clock by one frame, runs the frame, and renders it.
+     * The first frame only starts the clock, so no update ticks are run for it.
+     *
+     * @return the image the frame was rendered into, which is reused by the next frame
+     */
+    public BufferedImage step()
+    {
+        if(frameCount++ > 0)
+            clock += frameInterval;
+        host.frame(clock, false);
+        render();
+        host.finishFrame(true); // Before capturing, as under a real host
+
+        FrameRecorder recorder = host.getRecorder();
+        if(recorder != null && recorder.isRecording())
+            recorder.capture(image);
+        return image;
+    }
+
+    /**
+     * Steps several frames, only rendering the last one unless the host has a recorder capturing every frame.
+     *
+     * @param frames the number of frames
+     * @return the image the last frame was rendered into
+     */
+    public BufferedImage step(int frames)
+    {
+        for(int i = 1; i < frames; i++)
+        {
+            FrameRecorder recorder = host.getRecorder();
+            if(recorder != null && recorder.isRecording())
+            {
+                step();
+                continue;
+            }
+            if(frameCount++ > 0)
+                clock += frameInterval;
+            host.frame(clock, false);
+            host.finishFrame(false);
+        }
+        return step();
+    }
+
+    /**
+     * Lays out the host and renders it into the frame image, without running a frame.
+     *
+     * @return the frame image
+     */
+    public BufferedImage render()
+    {
+        host.setSize(image.getWidth(), image.getHeight());
+        layOut(host);
+
+        Graphics2D g = image.createGraphics();
+        try
+        {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            host.printAll(g); // Paints straight into the image, bypassing Swing's double buffering
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Lays out a container and everything inside of it. Needed because validate() does nothing for containers which
+     * have never been added to a window.
+     *
+     * @param container the container
+     */
+    private static void layOut(Container container)
+    {
+        container.doLayout();
+        for(int i = 0; i < container.getComponentCount(); i++)
+        {
+            Component child = container.getComponent(i);
+            if(child instanceof Container)
+                layOut((Container) child);
+        }
+    }
+
+    /**
+     * Returns the image frames are rendered into.
+     *
+     * @return the frame image
+     */
+    public BufferedImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Returns the current time on the virtual clock, counted from the first frame.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getTime()
+    {
+        return clock;
+    }
+
+    /**
+     * Returns the number of frames stepped so far.
+     *
+     * @return the number of frames
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+}
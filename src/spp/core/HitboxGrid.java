@@ -0,0 +1,166 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A uniform grid spatial index over the hitboxes of an SPComponent's GraphicalComponents.
+ * Hitboxes which report bounds are stored in every grid cell their bounds overlap, so a click only needs to test the hitboxes
+ * stored in the cell underneath it. Hitboxes without bounds are kept separately, and are tested for every click.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class HitboxGrid
+{
+    /**
+     * The width and height of a single grid cell, in pixels.
+     */
+    private int cellSize;
+    /**
+     * Maps packed cell coordinates to the components whose hitbox bounds overlap that cell.
+     */
+    private final HashMap<Long, ArrayList<GraphicalComponent>> cells;
+    /**
+     * Components with a hitbox that does not report any bounds.
+     */
+    private final HashSet<GraphicalComponent> unbounded;
+    /**
+     * Incremented on every click, so that marking the candidates of a click never requires clearing the marks of the last one.
+     */
+    private int clicks;
+
+    /**
+     * Constructor for HitboxGrid.
+     *
+     * @param cellSize the width and height of a single grid cell, in pixels
+     */
+    HitboxGrid(int cellSize)
+    {
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        unbounded = new HashSet<>();
+    }
+
+    /**
+     * Packs a pair of cell coordinates into a single key.
+     *
+     * @param cellX the cell column
+     * @param cellY the cell row
+     * @return the key
+     */
+    private static long key(int cellX, int cellY)
+    {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Inserts or re-inserts a component using the current bounds of its hitbox.
+     *
+     * @param component the component
+     */
+    void update(GraphicalComponent component)
+    {
+        remove(component);
+        GraphicalHitbox hitbox = component.getHitbox();
+        if(hitbox == null)
+            return;
+
+        Rectangle bounds = hitbox.getBounds();
+        if(bounds == null)
+        {
+            unbounded.add(component);
+            return;
+        }
+        if(bounds.isEmpty())
+            return;
+
+        Rectangle range = new Rectangle(Math.floorDiv(bounds.x, cellSize), Math.floorDiv(bounds.y, cellSize), 0, 0);
+        range.width = Math.floorDiv(bounds.x + bounds.width - 1, cellSize) - range.x + 1;
+        range.height = Math.floorDiv(bounds.y + bounds.height - 1, cellSize) - range.y + 1;
+        for(int x = range.x; x < range.x + range.width; x++)
+            for(int y = range.y; y < range.y + range.height; y++)
+                cells.computeIfAbsent(key(x, y), k -> new ArrayList<>()).add(component);
+        component.hitboxCells = range;
+    }
+
+    /**
+     * Removes a component from the index, if it is inside of it.
+     *
+     * @param component the component
+     */
+    void remove(GraphicalComponent component)
+    {
+        Rectangle range = component.hitboxCells;
+        if(range == null)
+        {
+            unbounded.remove(component);
+            return;
+        }
+        for(int x = range.x; x < range.x + range.width; x++)
+        {
+            for(int y = range.y; y < range.y + range.height; y++)
+            {
+                long key = key(x, y);
+                ArrayList<GraphicalComponent> cell = cells.get(key);
+                // Order within a cell does not matter, so the last component is swapped into the removed slot
+                int index = cell.indexOf(component);
+                GraphicalComponent last = cell.remove(cell.size() - 1);
+                if(index < cell.size())
+                    cell.set(index, last);
+                if(cell.isEmpty())
+                    cells.remove(key);
+            }
+        }
+        component.hitboxCells = null;
+    }
+
+    /**
+     * Marks every hitbox which could be activated by a mouse event as a candidate: those stored in the grid cell underneath
+     * the event, and those without bounds. Only these hitboxes need their activated function tested.
+     *
+     * @param event the mouse event
+     * @return the number of candidates
+     */
+    int markCandidates(MouseEvent event)
+    {
+        int mark = ++clicks;
+        ArrayList<GraphicalComponent> cell = cells.get(key(Math.floorDiv(event.getX(), cellSize), Math.floorDiv(event.getY(), cellSize)));
+        if(cell != null)
+            for(GraphicalComponent component: cell)
+                component.candidateMark = mark;
+        for(GraphicalComponent component: unbounded)
+            component.candidateMark = mark;
+        return (cell == null ? 0 : cell.size()) + unbounded.size();
+    }
+
+    /**
+     * Returns whether or not a component was marked as a candidate by the latest call to markCandidates.
+     *
+     * @param component the component
+     * @return whether or not the hitbox needs to be tested
+     */
+    boolean isCandidate(GraphicalComponent component)
+    {
+        return component.candidateMark == clicks;
+    }
+
+    /**
+     * Changes the size of the grid cells, re-inserting every indexed component.
+     *
+     * @param cellSize the width and height of a single grid cell, in pixels
+     * @param components every component which should be indexed
+     */
+    void setCellSize(int cellSize, LayeredComponentList components)
+    {
+        this.cellSize = cellSize;
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+            remove(component);
+        cells.clear();
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+            update(component);
+    }
+}
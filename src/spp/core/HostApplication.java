@@ -2,9 +2,18 @@ package spp.core;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An extension of the custom MultiPanel which constantly repaints itself at a certain framerate to allow for animations.
+ * Every SPComponent inside of it is also updated at a fixed tick rate, separate from the framerate, so that the speed of
+ * the simulation does not depend on how many frames actually get painted.
+ * Each SPComponent may also declare its own target framerate, in which case frames run at the highest framerate among the
+ * displayed panels and every panel is only repainted at its own rate. Panels which are not displayed are suspended, so they
+ * are neither updated nor painted until they are displayed again.
  *
  * @author Ben Zeng
  * @version 2
@@ -35,6 +44,21 @@ public class HostApplication extends MultiPanel
      * @return the HostApplication used for the project
      */
     public static HostApplication createBaseProject(String title, int width, int height)
+    {
+        return createBaseProject(title, width, height, false);
+    }
+
+    /**
+     * Creates a base / default starter project using a custom title, width, and height of the frame,
+     * optionally using active rendering instead of repainting through Swing.
+     *
+     * @param title the title of the JFrame
+     * @param width the width of the JFrame
+     * @param height the height of the JFrame
+     * @param activeRendering whether or not frames should be rendered straight into a page-flipped buffer strategy
+     * @return the HostApplication used for the project
+     */
+    public static HostApplication createBaseProject(String title, int width, int height, boolean activeRendering)
     {
         JFrame frame = new JFrame();
         HostApplication hostApplication = new HostApplication();
@@ -44,75 +68,591 @@ public class HostApplication extends MultiPanel
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
         frame.setResizable(false);
+        if(activeRendering)
+            hostApplication.enableActiveRendering(frame, 2);
         return hostApplication;
     }
 
     /**
-     * Whether or not the animation timer is currently active
+     * The scheduler which repaints this application at a fixed framerate.
+     */
+    private final FrameScheduler scheduler;
+    /**
+     * Whether or not a frame has been posted to the event dispatch thread without having been run yet.
      */
-    private boolean active;
+    private final AtomicBoolean framePending;
     /**
-     * The start time (milliseconds) of when the timer had started.
+     * Reusable list of every SPComponent inside of this application, collected at the start of each frame.
      */
-    private long start;
+    private final ArrayList<SPComponent> panels;
     /**
-     * The framerate of the timer.
+     * Reusable list of the SPComponents which are not suspended, collected at the start of each frame.
      */
-    private int FPS;
+    private final ArrayList<SPComponent> activePanels;
     /**
-     * The number of frames that have elapsed since the timer started. Used to accurately simulate framerate.
+     * The framerate of this application, used by panels without a target framerate of their own.
      */
-    private int framesElapsed;
+    private volatile int defaultFPS;
+    /**
+     * The framerate the scheduler is currently running at, following the panels being displayed.
+     */
+    private volatile int scheduledFPS;
+    /**
+     * The length of a single update tick, in nanoseconds.
+     */
+    private long tickInterval;
+    /**
+     * The maximum number of update ticks run within a single frame. Any time beyond this is dropped from the simulation.
+     */
+    private int maxTicksPerFrame;
+    /**
+     * Whether or not frames are stepped manually on a virtual clock, such as by a HeadlessHost, rather than run by the timer.
+     */
+    private final boolean stepped;
+    /**
+     * Simulation time (nanoseconds) which has elapsed but not yet been consumed by update ticks.
+     */
+    private long accumulator;
+    /**
+     * The time (nanoseconds) at which the previous frame was run.
+     */
+    private long lastFrame;
+    /**
+     * Set whenever the timer is (re)activated, so time spent inactive is not simulated.
+     */
+    private volatile boolean clockReset;
+    /**
+     * The window whose buffer strategy frames are rendered into when using active rendering, or null when repainting through Swing.
+     */
+    private volatile Window activeRenderingWindow;
+    /**
+     * The images loaded for this application's screens.
+     */
+    private final AssetManager assets;
+    /**
+     * The frame-time and dispatch metrics of this application, shared with every SPComponent inside of it.
+     */
+    private final FrameMetrics metrics;
+    /**
+     * The governor trading rendering quality for frame time, shared with every SPComponent inside of this application.
+     */
+    private final QualityGovernor governor;
+    /**
+     * The recorder every presented frame is captured into, or null if frames are not being recorded.
+     */
+    private volatile FrameRecorder recorder;
 
     /**
      * Default constructor.
      */
     public HostApplication()
+    {
+        this(true);
+    }
+
+    /**
+     * Constructor for HostApplication.
+     *
+     * @param active whether or not the timer starts out active. Hosts which run their frames manually, such as a HeadlessHost, start inactive.
+     */
+    HostApplication(boolean active)
     {
         super();
-        Thread timer = new Thread(() -> {
+        stepped = !active;
+        framePending = new AtomicBoolean();
+        panels = new ArrayList<>();
+        activePanels = new ArrayList<>();
+        scheduler = new FrameScheduler("HostApplication Timer", this::postFrame);
+        assets = new AssetManager(64L << 20);
+        metrics = new FrameMetrics(scheduler);
+        governor = new QualityGovernor();
+        setTickRate(60);
+        setMaxTicksPerFrame(5);
+        setFPS(60);
+        clockReset = true;
+        setActive(active);
+        setFocusable(true);
+    }
+
+    /**
+     * Posts a frame to the event dispatch thread, unless the previous one is still waiting to be run.
+     * When using active rendering, the frame thread instead waits for the frame to be rendered and shown.
+     */
+    private void postFrame()
+    {
+        if(activeRenderingWindow != null)
+        {
+            try
+            {
+                EventQueue.invokeAndWait(() -> frame(System.nanoTime(), true));
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch(InvocationTargetException e)
+            {
+                // Reports the failed frame without stopping the frame thread
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, e.getCause());
+            }
+        }
+        else if(framePending.compareAndSet(false, true))
+        {
+            EventQueue.invokeLater(() -> {
+                framePending.set(false);
+                frame(System.nanoTime(), true);
+            });
+        }
+        else if(metrics.isEnabled())
+            metrics.recordDroppedFrame();
+    }
+
+    /**
+     * Runs a single frame: panels which stopped or started being displayed are suspended or resumed, any buffered input is dispatched
+     * and the pointer position captured, then every SPComponent which is not suspended is updated for each tick that has elapsed since
+     * the last frame, given the interpolation alpha of the time left over, and then either rendered into the buffer strategy
+     * (under active rendering) or repainted through Swing. The scheduler's framerate is then adjusted to the panels being displayed.
+     *
+     * @param now     the current time, in nanoseconds
+     * @param present whether or not to render or repaint the frame, rather than leaving painting to the caller, which then finishes it through finishFrame
+     */
+    void frame(long now, boolean present)
+    {
+        boolean reset = clockReset;
+        if(reset)
+        {
+            clockReset = false;
+            lastFrame = now;
+            accumulator = 0;
+        }
+        long interval = now - lastFrame;
+        accumulator += interval;
+        lastFrame = now;
+
+        boolean measuring = metrics.isEnabled();
+        long frameStart = measuring ? System.nanoTime() : 0;
+        boolean governing = governor.isEnabled();
+        if(governing)
+            governor.beginFrame();
+        panels.clear();
+        activePanels.clear();
+        collectPanels(this, panels);
+        int rate = 0;
+        for(SPComponent panel: panels)
+        {
+            panel.metrics = metrics;
+            panel.governor = governor;
+            boolean displayed = isDisplayed(panel);
+            panel.setSuspended(!displayed && panel.isSuspendedWhenHidden());
+            if(panel.isSuspended())
+                continue;
+            panel.dispatchInput();
+            activePanels.add(panel);
+            if(panel.isShowing())
+                panel.capturePointer();
+            if(displayed)
+                rate = Math.max(rate, panel.getTargetFPS() == 0 ? defaultFPS : panel.getTargetFPS());
+        }
+
+        // A low framerate may need more ticks per frame than the cap allows, which would otherwise slow the simulation down.
+        // A virtual clock never stalls, so every tick of a stepped frame is run, keeping the simulation deterministic
+        long maxTicks = stepped ? Long.MAX_VALUE : Math.max(maxTicksPerFrame, scheduler.getFrameInterval() / tickInterval + 1);
+        double dt = tickInterval / 1e9;
+        long ticks = 0;
+        while(accumulator >= tickInterval)
+        {
+            if(ticks == maxTicks)
+            {
+                accumulator %= tickInterval;
+                break;
+            }
+            for(SPComponent panel: activePanels)
+                panel.updateEvent(dt);
+            accumulator -= tickInterval;
+            ticks++;
+        }
+
+        double alpha = (double) accumulator / tickInterval;
+        for(SPComponent panel: activePanels)
+            panel.setInterpolationAlpha(alpha);
+
+        if(present)
+        {
+            boolean presented;
+            Window window = activeRenderingWindow;
+            if(window != null && window.isDisplayable() && window.getBufferStrategy() != null)
+            {
+                presented = isRenderDue(now);
+                if(presented)
+                    render(window.getBufferStrategy(), SwingUtilities.convertPoint(this, 0, 0, window));
+            }
+            else
+                presented = repaintPanels(now);
+
+            // Ended before capturing, so that recording is not part of the frame time quality is traded against
+            if(governing)
+                finishFrame(presented);
+            FrameRecorder recorder = this.recorder;
+            if(presented && recorder != null && recorder.isRecording())
+                capture(recorder);
+        }
+        if(measuring)
+            metrics.recordFrame(reset ? -1 : interval, System.nanoTime() - frameStart);
+
+        rate = rate == 0 ? defaultFPS : rate;
+        if(rate != scheduledFPS && !stepped) // Stepped frames keep the framerate they are stepped at
+        {
+            scheduledFPS = rate;
+            scheduler.setFPS(rate);
+            governor.resetWindow(); // Frame times measured against the previous interval no longer apply
+        }
+    }
+
+    /**
+     * Ends a frame for the quality governor, only counting it towards the governor's window if it presented anything.
+     * Frames run without presenting are left open by frame(), to be finished by whatever presents them instead once it has.
+     * Must be called on the event dispatch thread.
+     *
+     * @param presented whether or not the frame was presented
+     */
+    void finishFrame(boolean presented)
+    {
+        if(!presented)
+            governor.skipFrame();
+        else if(governor.endFrame(scheduler.getFrameInterval()))
+        {
+            for(SPComponent panel: activePanels)
+                if(panel.isDirtyRegionRepainting())
+                    panel.markAllDirty(); // Layers may have appeared or disappeared
+        }
+    }
+
+    /**
+     * Repaints the displayed panels of this application through Swing, each only once its own frame interval has elapsed.
+     * Panels using dirty region repainting only repaint the regions that changed.
+     *
+     * @param now the time of the frame, in nanoseconds
+     * @return whether or not anything was due to be repainted
+     */
+    private boolean repaintPanels(long now)
+    {
+        long frameInterval = scheduler.getFrameInterval();
+        boolean anyDisplayed = false, anyDue = false, repaintRequested = false;
+        for(SPComponent panel: activePanels)
+        {
+            if(!isDisplayed(panel))
+                continue;
+            anyDisplayed = true;
+            if(!panel.isPaintDue(now, frameInterval))
+                continue;
+            anyDue = true;
+            if(panel.isDirtyRegionRepainting())
+                panel.repaintDirtyRegions();
+            else
+            {
+                panel.repaint();
+                repaintRequested = true;
+            }
+        }
+
+        // Falls back to repainting everything if there are no panels displayed at all
+        if(!anyDisplayed)
+        {
+            repaint();
+            repaintRequested = true;
+        }
+        if(repaintRequested && metrics.isEnabled())
+            metrics.recordRepaintRequest();
+        return anyDue || !anyDisplayed;
+    }
+
+    /**
+     * Returns whether or not any displayed panel is due to be painted, under active rendering. The application is rendered
+     * as a single image, so it is rendered whenever any of them is due, or on every frame if no panels are displayed at all.
+     *
+     * @param now the time of the frame, in nanoseconds
+     * @return whether or not the application should be rendered
+     */
+    private boolean isRenderDue(long now)
+    {
+        long frameInterval = scheduler.getFrameInterval();
+        boolean anyDisplayed = false, due = false;
+        for(SPComponent panel: activePanels)
+        {
+            if(!isDisplayed(panel))
+                continue;
+            anyDisplayed = true;
+            if(panel.isPaintDue(now, frameInterval)) // Every panel is checked, so each keeps its own schedule
+                due = true;
+        }
+        return due || !anyDisplayed;
+    }
 
-            while(true)
+    /**
+     * Renders this application straight into a buffer strategy and shows it, redrawing if the buffer contents are lost.
+     *
+     * @param strategy the buffer strategy
+     * @param offset   the location of this application within the strategy's window
+     */
+    private void render(BufferStrategy strategy, Point offset)
+    {
+        do
+        {
+            do
             {
-                if(active)
+                Graphics g = strategy.getDrawGraphics();
+                try
                 {
-                    long current = System.currentTimeMillis();
-                    while(framesElapsed < (current - start) * FPS / 1000)
-                    {
-                        repaint();
-                        framesElapsed++;
-                    }
+                    g.translate(offset.x, offset.y);
+                    g.clipRect(0, 0, getWidth(), getHeight());
+                    paint(g);
                 }
-            }
-        });
-        timer.start();
-        setFPS(60);
-        setActive(true);
-        setFocusable(true);
+                finally
+                {
+                    g.dispose();
+                }
+            } while(strategy.contentsRestored());
+            strategy.show();
+        } while(strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
     }
 
     /**
-     * Sets the timer to either be active or inactive.
+     * Switches this application to active rendering: rather than asking Swing to repaint, every frame is rendered straight
+     * into a page-flipped buffer strategy of the window and shown immediately, so frames are never coalesced or delayed.
+     * The frame thread waits for each frame to be presented on the event dispatch thread, keeping input, updates and painting
+     * on a single thread. The window must already be displayable.
+     *
+     * @param window  the window this application is displayed in
+     * @param buffers the number of buffers, 2 for double buffering or 3 for triple buffering
+     */
+    public void enableActiveRendering(Window window, int buffers)
+    {
+        window.setIgnoreRepaint(true);
+        window.createBufferStrategy(buffers);
+        setDoubleBuffered(false); // The buffer strategy already provides the back buffer
+        activeRenderingWindow = window;
+    }
+
+    /**
+     * Switches this application back to repainting through Swing.
+     */
+    public void disableActiveRendering()
+    {
+        Window window = activeRenderingWindow;
+        activeRenderingWindow = null;
+        if(window != null)
+        {
+            window.setIgnoreRepaint(false);
+            setDoubleBuffered(true);
+            repaint();
+        }
+    }
+
+    /**
+     * Returns whether or not this application is using active rendering.
+     *
+     * @return whether or not active rendering is enabled
+     */
+    public boolean isActiveRendering()
+    {
+        return activeRenderingWindow != null;
+    }
+
+    /**
+     * Returns whether or not a component inside of this application is currently displayed,
+     * meaning that it and every container between it and this application are visible.
+     *
+     * @param component the component
+     * @return whether or not the component is displayed
+     */
+    boolean isDisplayed(Component component)
+    {
+        while(component != this)
+        {
+            if(component == null || !component.isVisible())
+                return false;
+            component = component.getParent();
+        }
+        return true;
+    }
+
+    /**
+     * Adds every SPComponent contained within a container (at any depth) to a list.
+     *
+     * @param container the container
+     * @param out       the list
+     */
+    private static void collectPanels(Container container, ArrayList<SPComponent> out)
+    {
+        for(int i = 0; i < container.getComponentCount(); i++)
+        {
+            Component child = container.getComponent(i);
+            if(child instanceof SPComponent)
+                out.add((SPComponent) child);
+            if(child instanceof Container)
+                collectPanels((Container) child, out);
+        }
+    }
+
+    /**
+     * Sets the timer to either be active or inactive. The timer uses no CPU while inactive.
      *
      * @param active whether or not the timer should be active
      */
     public void setActive(boolean active)
     {
         if(active)
+            clockReset = true;
+        scheduler.setActive(active);
+    }
+
+    /**
+     * Sets the policy used when the timer misses frames, either skipping them or catching up.
+     * Catching up only runs extra frames under active rendering, where every frame is waited for. When repainting through
+     * Swing, a frame which is still pending absorbs the catch-up frames, so CATCH_UP behaves like SKIP. The simulation
+     * catches up either way, since every tick that elapsed is run by the next frame (up to the maximum ticks per frame).
+     *
+     * @param missedFramePolicy the policy
+     */
+    public void setMissedFramePolicy(FrameScheduler.MissedFramePolicy missedFramePolicy)
+    {
+        scheduler.setMissedFramePolicy(missedFramePolicy);
+    }
+
+    /**
+     * Returns the scheduler driving this application's frames.
+     *
+     * @return the scheduler
+     */
+    public FrameScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * Returns the asset manager shared by this application's screens, which keeps up to 64 MiB of images cached by default.
+     *
+     * @return the asset manager
+     */
+    public AssetManager getAssets()
+    {
+        return assets;
+    }
+
+    /**
+     * Returns the frame-time and dispatch metrics of this application. They are disabled until FrameMetrics.setEnabled is called.
+     *
+     * @return the metrics
+     */
+    public FrameMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Returns the quality governor of this application, which steps rendering quality down whenever frames take longer
+     * than the frame interval, and back up once there is headroom again. It is disabled until QualityGovernor.setEnabled is called.
+     *
+     * @return the quality governor
+     */
+    public QualityGovernor getQualityGovernor()
+    {
+        return governor;
+    }
+
+    /**
+     * Captures the frame which has just been presented into a recorder. The panels are painted again into the recorder's
+     * ring buffer, without clearing their dirty regions, resetting their counters or being recorded to the frame metrics,
+     * so that the capture leaves the next frame exactly as it would have been without it.
+     *
+     * @param recorder the recorder
+     */
+    private void capture(FrameRecorder recorder)
+    {
+        for(SPComponent panel: panels)
+            panel.capturing = true;
+        try
         {
-            start = System.currentTimeMillis();
-            framesElapsed = 0;
+            recorder.capture(this);
+        }
+        finally
+        {
+            for(SPComponent panel: panels)
+                panel.capturing = false;
         }
-        this.active = active;
     }
 
     /**
-     * Sets the framerate of this timer.
+     * Sets the recorder every frame is captured into once it has been presented.
+     * Capturing paints this application into the recorder's ring buffer on the event dispatch thread, while encoding happens in the background.
+     * Unless active rendering is used, Swing paints the screen after the frame has run, so each capture shows the state the
+     * frame left the panels in, which is what Swing goes on to paint.
+     *
+     * @param recorder the recorder, or null to stop capturing frames
+     */
+    public void setRecorder(FrameRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the recorder every frame is captured into.
+     *
+     * @return the recorder, or null if frames are not being captured
+     */
+    public FrameRecorder getRecorder()
+    {
+        return recorder;
+    }
+
+    /**
+     * Sets the framerate of this timer, used whenever no displayed panel has a higher target framerate of its own.
      *
      * @param FPS the framerate
+     * @throws IllegalArgumentException if the framerate is not positive.
+     */
+    public void setFPS(int FPS) throws IllegalArgumentException
+    {
+        scheduler.setFPS(FPS);
+        defaultFPS = scheduledFPS = FPS;
+        governor.resetWindow();
+    }
+
+    /**
+     * Returns the framerate of this timer, as set by setFPS.
+     *
+     * @return the framerate
+     */
+    public int getFPS()
+    {
+        return defaultFPS;
+    }
+
+    /**
+     * Sets the number of update ticks per second, independent of the framerate.
+     *
+     * @param ticksPerSecond the tick rate
+     * @throws IllegalArgumentException if the tick rate is not positive.
+     */
+    public void setTickRate(int ticksPerSecond) throws IllegalArgumentException
+    {
+        if(ticksPerSecond <= 0)
+            throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        tickInterval = 1_000_000_000L / ticksPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of update ticks run within a single frame. If the application falls further behind than this,
+     * the remaining time is dropped rather than simulated, so a slow frame cannot cause every following frame to be slow too.
+     * The cap is raised whenever the current framerate is so low that a single frame spans more ticks than this.
+     * Frames stepped manually on a virtual clock, such as by a HeadlessHost, are never capped, as they cannot fall behind.
+     *
+     * @param maxTicksPerFrame the maximum number of ticks
      */
-    public void setFPS(int FPS)
+    public void setMaxTicksPerFrame(int maxTicksPerFrame)
     {
-        this.FPS = FPS;
+        this.maxTicksPerFrame = Math.max(maxTicksPerFrame, 1);
     }
 }
@@ -0,0 +1,206 @@
+package spp.core;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A bitset of held key or mouse button codes. Queries and updates work directly on primitive codes, so polling input
+ * (for example, calling isKeyHeld inside of a draw loop) never boxes or allocates.
+ * As a Set, it is a read-only view: only the SPComponent dispatching input may change it.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class InputSet extends AbstractSet<Integer>
+{
+    /**
+     * Codes at or above this are stored in a small overflow array instead of the bitset,
+     * so that rare extended key codes do not grow the bitset to megabytes.
+     */
+    private static final int BITSET_LIMIT = 1 << 16;
+
+    /**
+     * The bits of the held codes below BITSET_LIMIT.
+     */
+    private long[] words;
+    /**
+     * The held codes at or above BITSET_LIMIT, in the first [overflowSize] slots.
+     */
+    private int[] overflow;
+    /**
+     * The number of codes in the overflow array.
+     */
+    private int overflowSize;
+    /**
+     * The number of held codes.
+     */
+    private int size;
+
+    /**
+     * Constructor for InputSet.
+     */
+    InputSet()
+    {
+        words = new long[4];
+        overflow = new int[0];
+    }
+
+    /**
+     * Returns whether or not a code is held.
+     *
+     * @param code the key or mouse button code
+     * @return whether or not the code is held
+     */
+    public boolean isHeld(int code)
+    {
+        if(code < 0)
+            return false;
+        if(code >= BITSET_LIMIT)
+            return indexOfOverflow(code) >= 0;
+        int word = code >>> 6;
+        return word < words.length && (words[word] & (1L << code)) != 0;
+    }
+
+    /**
+     * Returns the smallest held code greater than or equal to a given code, allowing held codes to be walked without allocating:
+     * {@code for(int code = set.nextHeld(0); code >= 0; code = set.nextHeld(code + 1))}.
+     *
+     * @param from the code to start searching from
+     * @return the next held code, or -1 if there is none.
+     */
+    public int nextHeld(int from)
+    {
+        from = Math.max(from, 0);
+        if(from < BITSET_LIMIT)
+        {
+            int word = from >>> 6;
+            if(word < words.length)
+            {
+                long bits = words[word] & (-1L << from);
+                while(true)
+                {
+                    if(bits != 0)
+                        return (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if(++word == words.length)
+                        break;
+                    bits = words[word];
+                }
+            }
+            from = BITSET_LIMIT;
+        }
+
+        int next = -1;
+        for(int i = 0; i < overflowSize; i++)
+            if(overflow[i] >= from && (next < 0 || overflow[i] < next))
+                next = overflow[i];
+        return next;
+    }
+
+    /**
+     * Marks a code as held.
+     *
+     * @param code the key or mouse button code
+     * @return false if the code was already held, or is negative.
+     */
+    boolean press(int code)
+    {
+        if(code < 0 || isHeld(code))
+            return false;
+        if(code >= BITSET_LIMIT)
+        {
+            if(overflowSize == overflow.length)
+                overflow = Arrays.copyOf(overflow, Math.max(overflowSize * 2, 4));
+            overflow[overflowSize++] = code;
+        }
+        else
+        {
+            int word = code >>> 6;
+            if(word >= words.length)
+                words = Arrays.copyOf(words, Math.max(words.length * 2, word + 1));
+            words[word] |= 1L << code;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Marks a code as no longer held.
+     *
+     * @param code the key or mouse button code
+     * @return false if the code was not held.
+     */
+    boolean release(int code)
+    {
+        if(!isHeld(code))
+            return false;
+        if(code >= BITSET_LIMIT)
+            overflow[indexOfOverflow(code)] = overflow[--overflowSize];
+        else
+            words[code >>> 6] &= ~(1L << code);
+        size--;
+        return true;
+    }
+
+    /**
+     * Marks every code as no longer held.
+     */
+    void releaseAll()
+    {
+        Arrays.fill(words, 0);
+        overflowSize = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the position of a code within the overflow array.
+     *
+     * @param code the code
+     * @return the position, or -1 if the code is not in the overflow array.
+     */
+    private int indexOfOverflow(int code)
+    {
+        for(int i = 0; i < overflowSize; i++)
+            if(overflow[i] == code)
+                return i;
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return o instanceof Integer && isHeld((Integer) o);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator()
+    {
+        return new Iterator<Integer>()
+        {
+            private int next = nextHeld(0);
+
+            @Override
+            public boolean hasNext()
+            {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next()
+            {
+                if(next < 0)
+                    throw new NoSuchElementException();
+                int code = next;
+                next = code == Integer.MAX_VALUE ? -1 : nextHeld(code + 1);
+                return code;
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * An offscreen image holding the rendered contents of a single layer of an SPComponent, so that layers which rarely change
+ * can be blitted on each frame instead of being redrawn component by component.
+ * A VolatileImage is used while the panel is displayed, so the cache can live in video memory; its contents may be lost
+ * at any time, in which case the layer is simply rendered again. Otherwise, a compatible BufferedImage is used.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class LayerCache
+{
+    /**
+     * The cached image, either a VolatileImage or a BufferedImage, or null if it has not been created yet.
+     */
+    private Image image;
+    /**
+     * Whether or not the contents of the image match the current contents of the layer.
+     */
+    private boolean valid;
+
+    /**
+     * Marks the cache as out of date, so the layer is rendered again before it is next drawn.
+     */
+    void invalidate()
+    {
+        valid = false;
+    }
+
+    /**
+     * Releases the cached image.
+     */
+    void flush()
+    {
+        if(image != null)
+            image.flush();
+        image = null;
+        valid = false;
+    }
+
+    /**
+     * Draws the cached layer, rendering it again first if it is out of date or its contents have been lost.
+     *
+     * @param g      the graphics instance
+     * @param panel  the panel the layer belongs to
+     * @param first  the first component of the layer
+     * @param alpha  the interpolation alpha
+     */
+    void draw(Graphics g, SPComponent panel, GraphicalComponent first, double alpha)
+    {
+        int width = Math.max(panel.getWidth(), 1), height = Math.max(panel.getHeight(), 1);
+        GraphicsConfiguration gc = panel.isShowing() ? panel.getGraphicsConfiguration() : null;
+
+        if(gc == null)
+        {
+            if(!(image instanceof BufferedImage) || image.getWidth(null) != width || image.getHeight(null) != height)
+            {
+                flush();
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            if(!valid)
+                render(image, first, alpha);
+            valid = true;
+            g.drawImage(image, 0, 0, null);
+            return;
+        }
+
+        VolatileImage volatileImage;
+        do
+        {
+            if(!(image instanceof VolatileImage) || image.getWidth(null) != width || image.getHeight(null) != height)
+            {
+                flush();
+                image = gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+            }
+            volatileImage = (VolatileImage) image;
+
+            int status = volatileImage.validate(gc);
+            if(status == VolatileImage.IMAGE_INCOMPATIBLE)
+            {
+                flush();
+                continue;
+            }
+            if(status == VolatileImage.IMAGE_RESTORED)
+                valid = false;
+
+            if(!valid)
+                render(volatileImage, first, alpha);
+            valid = true;
+            g.drawImage(volatileImage, 0, 0, null);
+
+            if(volatileImage.contentsLost())
+                valid = false;
+        } while(!valid);
+    }
+
+    /**
+     * Copies the cached layer into a new image, exactly as draw would draw it, rendering it again first if it is out of date.
+     * Unlike the cache itself, the copy can be drawn from several threads at once.
+     *
+     * @param panel the panel the layer belongs to
+     * @param first the first component of the layer
+     * @param alpha the interpolation alpha
+     * @return the copy
+     */
+    BufferedImage snapshot(SPComponent panel, GraphicalComponent first, double alpha)
+    {
+        BufferedImage snapshot = new BufferedImage(Math.max(panel.getWidth(), 1), Math.max(panel.getHeight(), 1), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = snapshot.createGraphics();
+        try
+        {
+            draw(g, panel, first, alpha);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Clears the image and renders every component of the layer into it.
+     *
+     * @param target the image
+     * @param first  the first component of the layer
+     * @param alpha  the interpolation alpha
+     */
+    private static void render(Image target, GraphicalComponent first, double alpha)
+    {
+        Graphics2D g = (Graphics2D) target.getGraphics();
+        try
+        {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, target.getWidth(null), target.getHeight(null));
+            g.setComposite(AlphaComposite.SrcOver);
+
+            int layer = first.getLayer();
+            for(GraphicalComponent component = first; component != null && component.getLayer() == layer; component = component.next)
+            {
+                component.draw(g, alpha);
+                component.recordPaintedBounds(component.getBounds());
+            }
+        }
+        finally
+        {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies of the cached layers of an SPComponent, which the tiles of a TileRenderer draw instead of the caches themselves.
+ * Java2D picks the source pixels of a scaled image relative to the clip it is drawn through, so a layer scaled into each
+ * tile separately would not line up with a layer scaled into the whole image. Instead, each layer is scaled into an image
+ * the size of the target once, through the clip painting the whole image would use, and every tile copies its part of it.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class LayerSnapshots
+{
+    /**
+     * The copies of the cached layers, at the size of the panel, by layer.
+     */
+    private final HashMap<Integer, BufferedImage> layers;
+    /**
+     * The copies of the cached layers, scaled as they would be drawn into the target, by layer.
+     */
+    private final ConcurrentHashMap<Integer, BufferedImage> scaledLayers = new ConcurrentHashMap<>();
+    /**
+     * The image being rendered into.
+     */
+    private final BufferedImage target;
+    /**
+     * The factor panel coordinates are scaled by.
+     */
+    private final double scale;
+    /**
+     * The area of the panel which is painted, or null if painting is not restricted.
+     */
+    private final Rectangle area;
+
+    /**
+     * Constructor for LayerSnapshots, copying every cached layer of a panel.
+     *
+     * @param panel  the panel
+     * @param alpha  the interpolation alpha
+     * @param target the image being rendered into
+     * @param scale  the factor panel coordinates are scaled by
+     * @param area   the area of the panel which is painted, or null if painting is not restricted
+     */
+    LayerSnapshots(SPComponent panel, double alpha, BufferedImage target, double scale, Rectangle area)
+    {
+        this.layers = panel.snapshotLayerCaches(alpha);
+        this.target = target;
+        this.scale = scale;
+        this.area = area;
+    }
+
+    /**
+     * Draws a cached layer, exactly as drawing the cache into the whole image through the same graphics state would.
+     * The layer is scaled by whichever tile reaches it first; every tile reaches it with the same graphics state.
+     *
+     * @param g     the graphics instance of a tile
+     * @param layer the layer
+     */
+    void draw(Graphics g, int layer)
+    {
+        Graphics2D g2 = (Graphics2D) g;
+        BufferedImage image = scaledLayers.computeIfAbsent(layer, key -> scaleLayer(layers.get(key), g2));
+        AffineTransform transform = g2.getTransform();
+        g2.setTransform(new AffineTransform());
+        g2.drawImage(image, 0, 0, null);
+        g2.setTransform(transform);
+    }
+
+    /**
+     * Scales a copy of a layer into an image the size of the target, through the clip and graphics state painting the
+     * whole image would draw it with. Drawn onto a transparent image, the scaled pixels are copied as they are, so they are
+     * only blended once, by the tile, with the tile's composite.
+     *
+     * @param layer the copy of the layer
+     * @param state the graphics instance whose transform and rendering hints are used
+     * @return the scaled layer
+     */
+    private BufferedImage scaleLayer(BufferedImage layer, Graphics2D state)
+    {
+        BufferedImage scaled = new BufferedImage(target.getWidth(), target.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = scaled.createGraphics();
+        try
+        {
+            g.scale(scale, scale);
+            if(area != null)
+                g.clipRect(area.x, area.y, area.width, area.height);
+            g.setTransform(state.getTransform());
+            g.setRenderingHints(state.getRenderingHints());
+            g.drawImage(layer, 0, 0, null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,210 @@
+package spp.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An always-ordered list of GraphicalComponents, used by SPComponent in place of sorting its components on every frame and event.
+ * Components are ordered by layer, and by insertion order within a layer (the same order a stable sort would give).
+ * The list is intrusive: each component stores its own links, so insertion only requires finding the component's layer,
+ * and removal is constant time.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+final class LayeredComponentList
+{
+    /**
+     * The first and last component of a single layer. Since components of the same layer are contiguous,
+     * these are enough to insert a new component at the end of its layer.
+     */
+    static final class Bucket
+    {
+        /**
+         * The list this bucket belongs to.
+         */
+        private final LayeredComponentList list;
+        /**
+         * The layer of every component in this bucket.
+         */
+        private final int layer;
+        /**
+         * The first component of the layer.
+         */
+        private GraphicalComponent first;
+        /**
+         * The last component of the layer.
+         */
+        private GraphicalComponent last;
+
+        /**
+         * Constructor for Bucket.
+         *
+         * @param list  the list this bucket belongs to
+         * @param layer the layer
+         */
+        private Bucket(LayeredComponentList list, int layer)
+        {
+            this.list = list;
+            this.layer = layer;
+        }
+    }
+
+    /**
+     * Maps each non-empty layer to its bucket.
+     */
+    private final TreeMap<Integer, Bucket> buckets;
+    /**
+     * The first (lowest layer) component.
+     */
+    private GraphicalComponent first;
+    /**
+     * The last (highest layer) component.
+     */
+    private GraphicalComponent last;
+    /**
+     * The number of components in the list.
+     */
+    private int size;
+
+    /**
+     * Constructor for LayeredComponentList.
+     */
+    LayeredComponentList()
+    {
+        buckets = new TreeMap<>();
+    }
+
+    /**
+     * Adds a component at the end of its layer.
+     *
+     * @param component the component
+     * @return false if the component is already inside of a list.
+     */
+    boolean add(GraphicalComponent component)
+    {
+        if(component.bucket != null)
+            return false;
+
+        int layer = component.getLayer();
+        Bucket bucket = buckets.get(layer);
+        GraphicalComponent previous;
+        if(bucket != null)
+            previous = bucket.last;
+        else
+        {
+            bucket = new Bucket(this, layer);
+            buckets.put(layer, bucket);
+            Map.Entry<Integer, Bucket> lower = buckets.lowerEntry(layer);
+            previous = lower == null ? null : lower.getValue().last;
+        }
+
+        GraphicalComponent next = previous == null ? first : previous.next;
+        component.previous = previous;
+        component.next = next;
+        if(previous == null)
+            first = component;
+        else
+            previous.next = component;
+        if(next == null)
+            last = component;
+        else
+            next.previous = component;
+
+        if(bucket.first == null)
+            bucket.first = component;
+        bucket.last = component;
+        component.bucket = bucket;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a component from the list.
+     *
+     * @param component the component
+     * @return false if the component was not inside of this list.
+     */
+    boolean remove(GraphicalComponent component)
+    {
+        if(!contains(component))
+            return false;
+
+        Bucket bucket = component.bucket;
+        GraphicalComponent previous = component.previous;
+        GraphicalComponent next = component.next;
+        if(previous == null)
+            first = next;
+        else
+            previous.next = next;
+        if(next == null)
+            last = previous;
+        else
+            next.previous = previous;
+
+        if(bucket.first == component && bucket.last == component)
+            buckets.remove(bucket.layer);
+        else if(bucket.first == component)
+            bucket.first = next;
+        else if(bucket.last == component)
+            bucket.last = previous;
+
+        component.previous = null;
+        component.next = null;
+        component.bucket = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns whether or not a component is inside of this list.
+     *
+     * @param component the component
+     * @return whether or not the component is inside of this list
+     */
+    boolean contains(GraphicalComponent component)
+    {
+        return component.bucket != null && component.bucket.list == this;
+    }
+
+    /**
+     * Returns the first (lowest layer) component. Following GraphicalComponent.next walks the list in drawing order.
+     *
+     * @return the first component, or null if the list is empty.
+     */
+    GraphicalComponent first()
+    {
+        return first;
+    }
+
+    /**
+     * Returns the last (highest layer) component. Following GraphicalComponent.previous walks the list in input order.
+     *
+     * @return the last component, or null if the list is empty.
+     */
+    GraphicalComponent last()
+    {
+        return last;
+    }
+
+    /**
+     * Returns the last component in the same layer as a given component.
+     *
+     * @param component a component inside of this list
+     * @return the last component of its layer
+     */
+    GraphicalComponent lastOfLayer(GraphicalComponent component)
+    {
+        return component.bucket.last;
+    }
+
+    /**
+     * Returns the number of components in the list.
+     *
+     * @return the size
+     */
+    int size()
+    {
+        return size;
+    }
+}
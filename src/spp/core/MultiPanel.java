@@ -3,11 +3,15 @@ package spp.core;
 import javax.swing.*;
 import java.awt.*;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
 
 /**
  * An extension of the JPanel which utilizes the CardLayout layout to easily switch between views.
  * This is useful for creating any type of JPanel that requires the switching of multiple other components, such as
  * Screen Switching within a program.
+ * Panels can either be added directly, or registered through a supplier, in which case they are only built the first time
+ * they are displayed (or preloaded), and may be released again while hidden once too many of them are resident.
  *
  * @author Ben Zeng
  * @version 2
@@ -22,6 +26,22 @@ public class MultiPanel extends JPanel
      * Maps String IDs to screens
      */
     private HashMap<String, JComponent> map;
+    /**
+     * Maps String IDs to the suppliers that build screens on demand
+     */
+    private HashMap<String, Supplier<? extends JComponent>> suppliers;
+    /**
+     * The screens built by suppliers which are currently resident, from least to most recently displayed
+     */
+    private LinkedHashMap<String, JComponent> resident;
+    /**
+     * The maximum number of screens built by suppliers that are kept resident at once
+     */
+    private int maxResidentPanels;
+    /**
+     * The ID of the screen currently displayed, or null if none has been displayed yet
+     */
+    private String displayedID;
 
     /**
      * Default constructor for MultiPanel.
@@ -30,6 +50,9 @@ public class MultiPanel extends JPanel
     {
         layout = new CardLayout();
         map = new HashMap<>();
+        suppliers = new HashMap<>();
+        resident = new LinkedHashMap<>(16, 0.75f, true);
+        maxResidentPanels = Integer.MAX_VALUE;
         setLayout(layout);
     }
 
@@ -46,25 +69,180 @@ public class MultiPanel extends JPanel
     }
 
     /**
-     * Sets a panel to be displayed via its ID.
+     * Registers a panel which is only built, through a supplier, the first time it is displayed or preloaded.
+     * Built panels may be released while hidden (see setMaxResidentPanels), in which case they are built again when next displayed.
+     *
+     * @param supplier builds the panel
+     * @param panelID  the ID of the panel
+     */
+    public final void add(Supplier<? extends JComponent> supplier, String panelID)
+    {
+        suppliers.put(panelID, supplier);
+    }
+
+    /**
+     * Sets a panel to be displayed via its ID, building it first if it was registered through a supplier.
      *
      * @param panelID the ID
      */
     public final void displayPanel(String panelID)
     {
-        JComponent current = map.get(panelID);
+        JComponent current = build(panelID);
+        if(!panelID.equals(displayedID))
+        {
+            JComponent previous = displayedID == null ? null : map.get(displayedID);
+            displayedID = panelID;
+            if(previous instanceof PanelLifecycle)
+                ((PanelLifecycle) previous).panelHidden();
+            layout.show(this, panelID);
+            if(current instanceof PanelLifecycle)
+                ((PanelLifecycle) current).panelShown();
+        }
         current.requestFocus();
-        layout.show(this, panelID);
+        releaseExcessPanels();
+    }
+
+    /**
+     * Builds a panel registered through a supplier in the background (at a later point on the event dispatch thread),
+     * so that displaying it later is instant. Useful for the screens most likely to be displayed next.
+     *
+     * @param panelID the ID
+     */
+    public final void preloadPanel(String panelID)
+    {
+        EventQueue.invokeLater(() -> {
+            if(!map.containsKey(panelID))
+            {
+                build(panelID);
+                releaseExcessPanels();
+            }
+        });
+    }
+
+    /**
+     * Returns a panel, building it first if it was registered through a supplier and is not resident.
+     *
+     * @param panelID the ID
+     * @return the panel, or null if no panel has the ID
+     */
+    private JComponent build(String panelID)
+    {
+        JComponent panel = map.get(panelID);
+        if(panel == null && suppliers.containsKey(panelID))
+        {
+            panel = suppliers.get(panelID).get();
+            add(panel, panelID);
+            if(panel instanceof PanelLifecycle)
+                ((PanelLifecycle) panel).panelCreated();
+        }
+        if(suppliers.containsKey(panelID))
+            resident.put(panelID, panel); // Marks the panel as the most recently used
+        return panel;
+    }
+
+    /**
+     * Releases the least recently displayed panels built by suppliers, until no more than the maximum number are resident.
+     * The visible panel is never released.
+     */
+    private void releaseExcessPanels()
+    {
+        while(resident.size() > maxResidentPanels)
+        {
+            String leastRecent = null;
+            for(String panelID: resident.keySet())
+            {
+                if(isReleasable(panelID))
+                {
+                    leastRecent = panelID;
+                    break;
+                }
+            }
+            if(leastRecent == null)
+                return;
+            release(leastRecent);
+        }
+    }
+
+    /**
+     * Releases a panel built by a supplier, if it is resident and not displayed, so that it is built again the next time it is displayed.
+     *
+     * @param panelID the ID
+     * @return whether or not the panel was released
+     */
+    public final boolean releasePanel(String panelID)
+    {
+        if(!resident.containsKey(panelID) || !isReleasable(panelID))
+            return false;
+        release(panelID);
+        return true;
+    }
+
+    /**
+     * Returns whether or not a resident panel may be released. The visible panel never is, which includes the first panel
+     * added, shown by the CardLayout before any panel has been displayed through displayPanel.
+     *
+     * @param panelID the ID
+     * @return whether or not the panel is hidden
+     */
+    private boolean isReleasable(String panelID)
+    {
+        return !panelID.equals(displayedID) && !map.get(panelID).isVisible();
+    }
+
+    /**
+     * Notifies a resident panel that it is being released, and removes it.
+     *
+     * @param panelID the ID
+     */
+    private void release(String panelID)
+    {
+        resident.remove(panelID);
+        JComponent panel = map.remove(panelID);
+        if(panel instanceof PanelLifecycle)
+            ((PanelLifecycle) panel).panelReleased();
+        remove(panel);
     }
 
     /**
-     * Getter for a panel via its ID.
+     * Sets the maximum number of panels built by suppliers that are kept resident at once. When exceeded, the least recently
+     * displayed hidden panels are released. Panels added directly are always kept.
+     *
+     * @param maxResidentPanels the maximum number of panels
+     */
+    public final void setMaxResidentPanels(int maxResidentPanels)
+    {
+        this.maxResidentPanels = Math.max(maxResidentPanels, 1);
+        releaseExcessPanels();
+    }
+
+    /**
+     * Returns the maximum number of panels built by suppliers that are kept resident at once.
+     *
+     * @return the maximum number of panels
+     */
+    public final int getMaxResidentPanels()
+    {
+        return maxResidentPanels;
+    }
+
+    /**
+     * Getter for a panel via its ID. Panels registered through a supplier are not built by this.
      *
      * @param panelID the ID
-     * @return the panel
+     * @return the panel, or null if it does not exist or is not currently built
      */
     public final JComponent getPanel(String panelID)
     {
         return map.get(panelID);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the ID of the panel currently displayed.
+     *
+     * @return the ID, or null if no panel has been displayed through displayPanel
+     */
+    public final String getDisplayedPanelID()
+    {
+        return displayedID;
+    }
+}
@@ -0,0 +1,44 @@
+package spp.core;
+
+/**
+ * Callbacks for panels inside of a MultiPanel, letting them react to being shown, hidden, or released.
+ * Panels registered through a supplier are only built the first time they are needed, and may be released again while hidden
+ * to keep memory bounded, so these callbacks are where such panels should start and stop work and free their resources.
+ * Every SPComponent implements this interface; while hidden, it is also suspended by its host application (see
+ * SPComponent.setSuspendedWhenHidden), so panelHidden and panelShown bracket the time it is neither updated nor painted.
+ * Every callback is run on the event dispatch thread, and does nothing by default.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public interface PanelLifecycle
+{
+    /**
+     * Called once a panel has been built by its supplier and added to its MultiPanel, before it is first shown.
+     */
+    default void panelCreated()
+    {
+    }
+
+    /**
+     * Called whenever a panel becomes the displayed panel of its MultiPanel.
+     */
+    default void panelShown()
+    {
+    }
+
+    /**
+     * Called whenever a panel stops being the displayed panel of its MultiPanel.
+     */
+    default void panelHidden()
+    {
+    }
+
+    /**
+     * Called right before a panel built by a supplier is removed from its MultiPanel to free memory.
+     * The panel is never used again; if it is displayed later, the supplier builds a new one.
+     */
+    default void panelReleased()
+    {
+    }
+}
@@ -0,0 +1,386 @@
+package spp.core;
+
+import java.awt.*;
+
+/**
+ * Keeps a HostApplication at a steady framerate by trading rendering quality for frame time.
+ * The time each frame takes to run and paint is averaged over windows of frames, and compared against the frame interval
+ * of the host's scheduler. Whenever a window averages above the degrade threshold, quality is stepped down one level;
+ * only once several windows in a row average below the (much lower) upgrade threshold is it stepped back up, so that
+ * quality does not oscillate between two levels. Each level includes every reduction of the levels before it.
+ * Only frames which present something are counted, and a window starts over whenever the level or the framerate changes,
+ * so that it never mixes frames measured under different conditions.
+ * The governor is disabled by default, in which case quality is always full.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class QualityGovernor
+{
+    /**
+     * The quality levels, from full quality down to the most reduced.
+     */
+    public enum Level
+    {
+        /**
+         * Nothing is reduced.
+         */
+        FULL,
+        /**
+         * Antialiasing and image interpolation are turned off, and rendering hints favour speed over quality.
+         * Components which set their own rendering hints while drawing override this, and can check getLevel() to avoid doing so.
+         */
+        NO_ANTIALIASING,
+        /**
+         * Layers marked as low priority through SPComponent.setLayerLowPriority are no longer drawn.
+         */
+        NO_LOW_PRIORITY_LAYERS,
+        /**
+         * Components not marked as critical are only updated every few ticks.
+         */
+        REDUCED_UPDATES
+    }
+
+    /**
+     * Whether or not the governor is adjusting quality.
+     */
+    private volatile boolean enabled;
+    /**
+     * The current quality level.
+     */
+    private volatile Level level;
+    /**
+     * The lowest quality level the governor may step down to.
+     */
+    private volatile Level maxLevel;
+    /**
+     * The fraction of the frame interval a window must average above for quality to be stepped down.
+     */
+    private volatile double degradeThreshold;
+    /**
+     * The fraction of the frame interval a window must average below for quality to be stepped back up.
+     */
+    private volatile double upgradeThreshold;
+    /**
+     * The number of frames averaged in each window.
+     */
+    private volatile int windowSize;
+    /**
+     * The number of windows in a row which must have headroom before quality is stepped back up.
+     */
+    private volatile int upgradeWindows;
+    /**
+     * How many ticks non-critical components are updated once every, at the REDUCED_UPDATES level.
+     */
+    private volatile int reducedUpdateStride;
+    /**
+     * The total frame time of the current window, in nanoseconds.
+     */
+    private long windowTime;
+    /**
+     * The number of frames in the current window.
+     */
+    private int windowFrames;
+    /**
+     * The number of windows in a row which have had headroom.
+     */
+    private int headroomWindows;
+    /**
+     * Whether or not a frame of the host application is currently running. Only accessed on the event dispatch thread.
+     */
+    private boolean inFrame;
+    /**
+     * The time (nanoseconds) at which the current frame started.
+     */
+    private long frameStart;
+    /**
+     * The number of SPComponent paints currently in progress, which are nested inside of each other.
+     */
+    private int paintDepth;
+    /**
+     * The time (nanoseconds) at which the outermost paint in progress started.
+     */
+    private long paintStart;
+    /**
+     * Time spent painting through Swing outside of a frame, in nanoseconds, added to the next frame.
+     */
+    private long pendingPaintTime;
+    /**
+     * Whether or not the frames of the current window should be discarded at the start of the next frame.
+     */
+    private volatile boolean windowStale;
+
+    /**
+     * Constructor for QualityGovernor, averaging windows of 30 frames, stepping down above 90% of the frame interval and
+     * back up after 3 windows in a row below 50%.
+     */
+    public QualityGovernor()
+    {
+        level = Level.FULL;
+        maxLevel = Level.REDUCED_UPDATES;
+        degradeThreshold = 0.9;
+        upgradeThreshold = 0.5;
+        windowSize = 30;
+        upgradeWindows = 3;
+        reducedUpdateStride = 2;
+    }
+
+    /**
+     * Sets whether or not the governor is adjusting quality. Disabling it returns quality to full, and enabling it starts a new window.
+     *
+     * @param enabled whether or not quality is adjusted
+     */
+    public void setEnabled(boolean enabled)
+    {
+        if(enabled && !this.enabled)
+            resetWindow(); // Frames from before the governor was disabled say nothing about the frames to come
+        this.enabled = enabled;
+        if(!enabled)
+            level = Level.FULL;
+    }
+
+    /**
+     * Returns whether or not the governor is adjusting quality.
+     *
+     * @return whether or not the governor is enabled
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Returns the current quality level.
+     *
+     * @return the level
+     */
+    public Level getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Sets the lowest quality level the governor may step down to, such as NO_LOW_PRIORITY_LAYERS for applications
+     * whose simulation must never be slowed down. Quality is raised immediately if it is currently below this.
+     *
+     * @param maxLevel the lowest level
+     */
+    public void setMaxLevel(Level maxLevel)
+    {
+        this.maxLevel = maxLevel;
+        if(level.compareTo(maxLevel) > 0)
+        {
+            level = maxLevel;
+            resetWindow();
+        }
+    }
+
+    /**
+     * Returns the lowest quality level the governor may step down to.
+     *
+     * @return the lowest level
+     */
+    public Level getMaxLevel()
+    {
+        return maxLevel;
+    }
+
+    /**
+     * Sets the fractions of the frame interval at which quality is stepped down and back up.
+     * The gap between them keeps quality from oscillating when a level's savings are close to the remaining headroom.
+     *
+     * @param degradeThreshold the fraction a window must average above for quality to be stepped down
+     * @param upgradeThreshold the fraction a window must average below for quality to be stepped back up
+     * @throws IllegalArgumentException if the upgrade threshold is not positive, or not below the degrade threshold.
+     */
+    public void setThresholds(double degradeThreshold, double upgradeThreshold) throws IllegalArgumentException
+    {
+        if(upgradeThreshold <= 0 || upgradeThreshold >= degradeThreshold)
+            throw new IllegalArgumentException("Thresholds must satisfy 0 < upgrade < degrade: " + upgradeThreshold + ", " + degradeThreshold);
+        this.degradeThreshold = degradeThreshold;
+        this.upgradeThreshold = upgradeThreshold;
+    }
+
+    /**
+     * Sets the number of frames averaged in each window. Longer windows react more slowly, but ignore isolated slow frames.
+     *
+     * @param windowSize the number of frames
+     */
+    public void setWindowSize(int windowSize)
+    {
+        this.windowSize = Math.max(windowSize, 1);
+    }
+
+    /**
+     * Sets the number of windows in a row which must have headroom before quality is stepped back up.
+     *
+     * @param upgradeWindows the number of windows
+     */
+    public void setUpgradeWindows(int upgradeWindows)
+    {
+        this.upgradeWindows = Math.max(upgradeWindows, 1);
+    }
+
+    /**
+     * Sets how many ticks non-critical components are updated once every, at the REDUCED_UPDATES level.
+     *
+     * @param reducedUpdateStride the number of ticks
+     */
+    public void setReducedUpdateStride(int reducedUpdateStride)
+    {
+        this.reducedUpdateStride = Math.max(reducedUpdateStride, 1);
+    }
+
+    /**
+     * Returns how many ticks non-critical components are currently updated once every.
+     *
+     * @return the number of ticks, which is 1 unless quality is at the REDUCED_UPDATES level
+     */
+    int getUpdateStride()
+    {
+        return level == Level.REDUCED_UPDATES ? reducedUpdateStride : 1;
+    }
+
+    /**
+     * Returns whether or not antialiasing is currently turned off.
+     *
+     * @return whether or not antialiasing is turned off
+     */
+    boolean isAntialiasingDisabled()
+    {
+        return level.compareTo(Level.NO_ANTIALIASING) >= 0;
+    }
+
+    /**
+     * Returns whether or not layers marked as low priority are currently skipped.
+     *
+     * @return whether or not low priority layers are skipped
+     */
+    boolean isSkippingLowPriorityLayers()
+    {
+        return level.compareTo(Level.NO_LOW_PRIORITY_LAYERS) >= 0;
+    }
+
+    /**
+     * Sets the rendering hints of a graphics instance to favour speed over quality.
+     *
+     * @param g the graphics instance
+     */
+    static void applyFastHints(Graphics2D g)
+    {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+    }
+
+    /**
+     * Marks the start of a frame of the host application. Must be called on the event dispatch thread.
+     */
+    void beginFrame()
+    {
+        if(windowStale)
+        {
+            windowStale = false;
+            clearWindow();
+            pendingPaintTime = 0;
+        }
+        inFrame = true;
+        paintDepth = 0; // Recovers from a paint which threw before finishing
+        frameStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a frame of the host application, and adjusts quality once a window of frames is complete.
+     * Paints through Swing since the previous frame are counted as part of this frame. Must be called on the event dispatch thread.
+     *
+     * @param frameInterval the time between frames of the host application, in nanoseconds
+     * @return whether or not the quality level changed
+     */
+    boolean endFrame(long frameInterval)
+    {
+        if(!inFrame)
+            return false; // The governor was enabled part way through the frame
+        inFrame = false;
+        windowTime += System.nanoTime() - frameStart + pendingPaintTime;
+        pendingPaintTime = 0;
+        if(++windowFrames < windowSize)
+            return false;
+
+        double mean = (double) windowTime / windowFrames;
+        windowTime = 0;
+        windowFrames = 0;
+        Level current = level;
+        if(mean > frameInterval * degradeThreshold)
+        {
+            headroomWindows = 0;
+            if(current.compareTo(maxLevel) < 0)
+            {
+                level = Level.values()[current.ordinal() + 1];
+                clearWindow();
+                return true;
+            }
+        }
+        else if(mean < frameInterval * upgradeThreshold)
+        {
+            if(++headroomWindows >= upgradeWindows && current != Level.FULL)
+            {
+                level = Level.values()[current.ordinal() - 1];
+                clearWindow();
+                return true;
+            }
+        }
+        else
+            headroomWindows = 0;
+        return false;
+    }
+
+    /**
+     * Marks the end of a frame of the host application which presented nothing, without counting it towards the window.
+     * Must be called on the event dispatch thread.
+     */
+    void skipFrame()
+    {
+        inFrame = false;
+    }
+
+    /**
+     * Discards the frames of the current window at the start of the next frame, such as once the frame interval they were
+     * measured against has changed. Can be called from any thread.
+     */
+    void resetWindow()
+    {
+        windowStale = true;
+    }
+
+    /**
+     * Discards the frames of the current window, and any windows with headroom before it.
+     */
+    private void clearWindow()
+    {
+        windowTime = 0;
+        windowFrames = 0;
+        headroomWindows = 0;
+    }
+
+    /**
+     * Marks the start of an SPComponent paint. Must be called on the event dispatch thread.
+     */
+    void beginPaint()
+    {
+        if(paintDepth++ == 0)
+            paintStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of an SPComponent paint. Only the outermost paints outside of a frame are counted, since paints
+     * during a frame are already part of its time. Must be called on the event dispatch thread.
+     */
+    void endPaint()
+    {
+        if(paintDepth > 0 && --paintDepth == 0 && !inFrame)
+            pendingPaintTime += System.nanoTime() - paintStart;
+    }
+}
@@ -2,11 +2,23 @@ package spp.core;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
 
 /**
  * A general-purpose, enhanced JComponent that serves as a container for the GraphicalComponent.
@@ -15,32 +27,169 @@ import java.util.*;
  * @author Ben Zeng
  * @version 2
  */
-public class SPComponent extends JPanel
+public class SPComponent extends JPanel implements PanelLifecycle
 {
+    /**
+     * The maximum number of input events queued between frames, beyond which the queue is run early.
+     */
+    private static final int MAX_QUEUED_INPUT = 1024;
+
     /**
      * All the key codes that are currently being held
      */
-    private HashSet<Integer> activeKeys;
+    private final InputSet activeKeys;
     /**
      * All the mouse button codes that are currently being held
      */
-    private HashSet<Integer> activeMousePresses;
+    private final InputSet activeMousePresses;
+    /**
+     * Snapshot of the mouse position, relative to this panel
+     */
+    private Point pointer;
+    /**
+     * Whether or not the pointer snapshot has been taken yet
+     */
+    private boolean pointerCaptured;
+    /**
+     * Stores input events waiting to be run at the start of the next frame, when input buffering is enabled
+     */
+    private ArrayDeque<InputEvent> inputQueue;
+    /**
+     * Whether or not input events are queued until the next frame instead of being run immediately
+     */
+    private boolean inputBuffering;
     /**
      * Stores components that need to be added
      */
-    private Queue<GraphicalComponent> pendingAdditions;
+    private ConcurrentLinkedQueue<GraphicalComponent> pendingAdditions;
     /**
      * Stores components that need to be deleted
      */
-    private Queue<GraphicalComponent> pendingDeletions;
+    private ConcurrentLinkedQueue<GraphicalComponent> pendingDeletions;
+    /**
+     * Reusable list of removals which overtook their addition, queued again at the end of clearPending
+     */
+    private ArrayList<GraphicalComponent> retriedDeletions;
+    /**
+     * List of all GraphicalComponents contained within this component, always kept in layer order
+     */
+    private LayeredComponentList components;
+    /**
+     * Spatial index over the hitboxes of all components, used to find which hitbox a click lands on
+     */
+    private HitboxGrid hitboxGrid;
+    /**
+     * Regions of this panel which need to be repainted, used for dirty region repainting
+     */
+    private DirtyRegions dirtyRegions;
     /**
-     * List of all GraphicalComponents contained within this component
+     * Components which have been marked dirty since the last paint
      */
-    private ArrayList<GraphicalComponent> components;
+    private ArrayList<GraphicalComponent> dirtyComponents;
+    /**
+     * Reusable rectangles holding the merged clip rectangles for a single dirty repaint
+     */
+    private ArrayList<Rectangle> clipRegions;
+    /**
+     * Whether or not only dirty regions are repainted on each frame, instead of the entire panel
+     */
+    private boolean dirtyRegionRepainting;
+    /**
+     * The maximum number of clip rectangles painted per frame when dirty region repainting
+     */
+    private int maxDirtyRegions;
+    /**
+     * Offscreen caches of the layers which have been marked as cached, mapped by layer
+     */
+    private HashMap<Integer, LayerCache> layerCaches;
+    /**
+     * Area of this panel that components are culled against in addition to the clip, or null to use the visible area
+     */
+    private Rectangle viewport;
+    /**
+     * Reusable rectangle holding the visible area of this panel
+     */
+    private Rectangle visibleArea;
+    /**
+     * Number of components skipped in the last frame for lying entirely outside of the visible area
+     */
+    private int culledCount;
+    /**
+     * Number of components drawn in the last frame
+     */
+    private int drawnCount;
+    /**
+     * Whether or not paints are currently being counted as part of the same frame
+     */
+    private boolean countingFrame;
     /**
      * Helper variable used to help suppress components from being run.
      */
     private boolean overridden;
+    /**
+     * How far (from 0 to 1) the current frame lies between the previous update tick and the next one.
+     */
+    private double interpolationAlpha;
+    /**
+     * The pool independent components are updated on, or null if every component is updated on the calling thread.
+     */
+    private ForkJoinPool updatePool;
+    /**
+     * Reusable snapshot of the independent components updated in parallel during a single tick.
+     */
+    private GraphicalComponent[] parallelBatch;
+    /**
+     * Whether or not independent components are currently being updated on worker threads.
+     */
+    private boolean parallelUpdating;
+    /**
+     * Components marked dirty from worker threads, processed once the parallel update has finished.
+     */
+    private ConcurrentLinkedQueue<GraphicalComponent> deferredDirty;
+    /**
+     * Components whose hitbox moved on worker threads, processed once the parallel update has finished.
+     */
+    private ConcurrentLinkedQueue<GraphicalComponent> deferredHitboxes;
+    /**
+     * The metrics paints and input dispatches are recorded to, assigned by the host application. Null outside of a host.
+     */
+    FrameMetrics metrics;
+    /**
+     * The quality governor deciding how much painting and updating is reduced, assigned by the host application. Null outside of a host.
+     */
+    QualityGovernor governor;
+    /**
+     * Whether or not this panel is being painted into a capture of the frame rather than onto the screen. Only accessed on the event dispatch thread.
+     */
+    boolean capturing;
+    /**
+     * The layers which are no longer drawn once the quality governor has degraded quality far enough
+     */
+    private HashSet<Integer> lowPriorityLayers;
+    /**
+     * The number of ticks run while non-critical components were being updated at a reduced rate.
+     */
+    private long reducedTicks;
+    /**
+     * The framerate this panel is painted at, or 0 to be painted on every frame of the host application.
+     */
+    private int targetFPS;
+    /**
+     * The time (nanoseconds, on the host's clock) at which this panel is next due to be painted, when it has a target framerate.
+     */
+    private long nextPaint;
+    /**
+     * Whether or not nextPaint has been set since this panel was created or last resumed.
+     */
+    private boolean paintScheduled;
+    /**
+     * Whether or not the host application has stopped updating and painting this panel.
+     */
+    private boolean suspended;
+    /**
+     * Whether or not this panel is suspended whenever it is not displayed.
+     */
+    private boolean suspendedWhenHidden;
 
     /**
      * Public constructor for SPComponent
@@ -48,69 +197,686 @@ public class SPComponent extends JPanel
     public SPComponent()
     {
         setLayout(null);
-        components = new ArrayList<>();
-        pendingDeletions = new LinkedList<>();
-        pendingAdditions = new LinkedList<>();
-        activeMousePresses = new HashSet<>();
-        activeKeys = new HashSet<>();
+        components = new LayeredComponentList();
+        hitboxGrid = new HitboxGrid(64);
+        dirtyRegions = new DirtyRegions();
+        dirtyComponents = new ArrayList<>();
+        clipRegions = new ArrayList<>();
+        visibleArea = new Rectangle();
+        layerCaches = new HashMap<>();
+        lowPriorityLayers = new HashSet<>();
+        maxDirtyRegions = 4;
+        pendingDeletions = new ConcurrentLinkedQueue<>();
+        retriedDeletions = new ArrayList<>();
+        pendingAdditions = new ConcurrentLinkedQueue<>();
+        deferredDirty = new ConcurrentLinkedQueue<>();
+        deferredHitboxes = new ConcurrentLinkedQueue<>();
+        parallelBatch = new GraphicalComponent[0];
+        inputQueue = new ArrayDeque<>();
+        pointer = new Point();
+        activeMousePresses = new InputSet();
+        activeKeys = new InputSet();
+        suspendedWhenHidden = true;
         setFocusable(true);
 
-        addMouseListener(new MouseAdapter()
+        MouseAdapter mouseAdapter = new MouseAdapter()
         {
             @Override
             public void mousePressed(MouseEvent event)
             {
-                // Calls the overridable mousePressEvent function.
-                mousePressEvent(event);
+                // Queues or runs the mousePressEvent function.
+                receiveInput(event);
             }
 
             @Override
             public void mouseReleased(MouseEvent event)
             {
-                // Calls the overridable mousePressEvent function.
-                mouseReleaseEvent(event);
+                // Queues or runs the mouseReleaseEvent function.
+                receiveInput(event);
             }
-        });
+
+            @Override
+            public void mouseMoved(MouseEvent event)
+            {
+                // Queues or runs the mouseMoveEvent function.
+                receiveInput(event);
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent event)
+            {
+                // Queues or runs the mouseMoveEvent function.
+                receiveInput(event);
+            }
+        };
+        addMouseListener(mouseAdapter);
+        addMouseMotionListener(mouseAdapter);
 
         addKeyListener(new KeyAdapter()
         {
             @Override
             public void keyPressed(KeyEvent event)
             {
-                // Calls the keyPressEvent function from here.
-                keyPressEvent(event);
+                // Queues or runs the keyPressEvent function.
+                receiveInput(event);
+            }
+
+            @Override
+            public void keyReleased(KeyEvent event)
+            {
+                // Queues or runs the keyReleaseEvent function.
+                receiveInput(event);
             }
+        });
+    }
+
+    /**
+     * Called by the AWT listeners for every input event. When input buffering is enabled and an active host application is
+     * running frames, the event is queued until the next call to dispatchInput, replacing the previous event if both are the
+     * same kind of mouse motion. Otherwise, it is run immediately, since nothing would ever dispatch the queue.
+     * Mouse motion is queued and coalesced even without input buffering while a host is driving this panel, so that it
+     * costs at most one walk of the components per frame; any other event runs the queued motion first, keeping the order.
+     * Should the queue still reach its maximum size, everything queued is run first, so it never grows without bound.
+     * Events which would be queued while this panel is suspended are discarded, since the host does not dispatch them.
+     *
+     * @param event the input event
+     */
+    private void receiveInput(InputEvent event)
+    {
+        int id = event.getID();
+        boolean motion = id == MouseEvent.MOUSE_MOVED || id == MouseEvent.MOUSE_DRAGGED;
+        if(!(inputBuffering || motion) || !isDrivenByHost())
+        {
+            dispatchInput(); // Anything queued, such as coalesced motion, runs first, keeping the order
+            handleInput(event);
+            return;
+        }
+        if(suspended)
+            return;
+        if(motion && !inputQueue.isEmpty() && inputQueue.peekLast().getID() == id)
+            inputQueue.pollLast(); // Only the latest position of consecutive motion matters
+        else if(inputQueue.size() >= MAX_QUEUED_INPUT)
+            dispatchInput();
+        inputQueue.add(event);
+    }
+
+    /**
+     * Returns whether or not this panel is inside of a host application whose timer is active, and so has its input dispatched every frame.
+     *
+     * @return whether or not a host is driving this panel
+     */
+    private boolean isDrivenByHost()
+    {
+        for(Container parent = getParent(); parent != null; parent = parent.getParent())
+            if(parent instanceof HostApplication)
+                return ((HostApplication) parent).getScheduler().isActive();
+        return false;
+    }
+
+    /**
+     * Runs the dispatch function matching an input event.
+     *
+     * @param event the input event
+     */
+    private void handleInput(InputEvent event)
+    {
+        FrameMetrics metrics = this.metrics;
+        if(metrics != null && metrics.isEnabled())
+            metrics.recordInput(event.getWhen());
+        if(event instanceof MouseEvent)
+        {
+            MouseEvent mouseEvent = (MouseEvent) event;
+            pointer.setLocation(mouseEvent.getX(), mouseEvent.getY());
+            pointerCaptured = true;
+        }
+        switch(event.getID())
+        {
+            case MouseEvent.MOUSE_PRESSED:
+                mousePressEvent((MouseEvent) event);
+                break;
+            case MouseEvent.MOUSE_RELEASED:
+                mouseReleaseEvent((MouseEvent) event);
+                break;
+            case MouseEvent.MOUSE_MOVED:
+            case MouseEvent.MOUSE_DRAGGED:
+                mouseMoveEvent((MouseEvent) event);
+                break;
+            case KeyEvent.KEY_PRESSED:
+                keyPressEvent((KeyEvent) event);
+                break;
+            case KeyEvent.KEY_RELEASED:
+                keyReleaseEvent((KeyEvent) event);
+                break;
+        }
+    }
+
+    /**
+     * Runs every input event that has been queued since the last call, in the order they were received.
+     * Called by the host application at the start of every frame, before updating; only needed when input buffering is enabled.
+     * Must be called on the event dispatch thread.
+     */
+    public void dispatchInput()
+    {
+        InputEvent event;
+        while((event = inputQueue.poll()) != null)
+            handleInput(event);
+    }
+
+    /**
+     * Sets whether or not input events are queued and run together at the start of each frame, instead of as soon as they arrive.
+     * Consecutive mouse motion within a frame is coalesced into a single event, which also happens without buffering.
+     * Disabling buffering runs any queued events.
+     * Events are only queued while this panel is inside of an active host application; otherwise they are still run as they arrive.
+     *
+     * @param inputBuffering whether or not to buffer input
+     */
+    public void setInputBuffering(boolean inputBuffering)
+    {
+        this.inputBuffering = inputBuffering;
+        if(!inputBuffering)
+            dispatchInput();
+    }
+
+    /**
+     * Returns whether or not input events are queued and run together at the start of each frame.
+     *
+     * @return whether or not input is buffered
+     */
+    public boolean isInputBuffering()
+    {
+        return inputBuffering;
+    }
+
+    @Override
+    public final void paint(Graphics graphics)
+    {
+        // A capture only reproduces the frame, so it leaves the dirty state, counters and timings of real paints alone
+        boolean tracking = !capturing;
+        FrameMetrics metrics = this.metrics;
+        boolean measuring = tracking && metrics != null && metrics.isEnabled();
+        long paintStart = measuring ? System.nanoTime() : 0;
+        QualityGovernor governor = this.governor;
+        boolean governing = governor != null && governor.isEnabled();
+        if(governing && tracking)
+            governor.beginPaint();
+
+        // Paints through a copy, so the clip and hints set here never leak into whatever the caller paints afterwards
+        Graphics g = graphics.create();
+        try
+        {
+            clearPending();
+            Rectangle clip = g.getClipBounds();
+            if(tracking && (clip == null || clip.contains(0, 0, getWidth(), getHeight())))
+                clearDirty(); // Everything is about to be repainted anyway
+            if(tracking && !countingFrame)
+                culledCount = drawnCount = 0;
+
+            Rectangle visible = getPaintViewport();
+            if(visible != null)
+                g.clipRect(visible.x, visible.y, visible.width, visible.height);
+            else if(clip == null && getWidth() > 0 && getHeight() > 0)
+                g.clipRect(0, 0, getWidth(), getHeight()); // Painting without a clip, such as into an image
+
+            drawGraphics(g, interpolationAlpha, measuring ? metrics : null, null, null, tracking);
+            clearPending();
+            paintComponents(g);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        if(measuring)
+            metrics.recordPaint(System.nanoTime() - paintStart);
+        if(governing && tracking)
+            governor.endPaint();
+    }
+
+    /**
+     * Returns the area painting is restricted to, if part of this panel is scrolled out of view or a viewport has been set.
+     * The visible area is reused between calls, so it must be copied to be kept.
+     *
+     * @return the area, or null if the whole panel is painted
+     */
+    Rectangle getPaintViewport()
+    {
+        Rectangle visible = viewport;
+        if(visible == null && isShowing())
+        {
+            computeVisibleRect(visibleArea);
+            if(!visibleArea.contains(0, 0, getWidth(), getHeight()))
+                visible = visibleArea;
+        }
+        return visible;
+    }
+
+    /**
+     * Draws the background and every GraphicalComponent of this panel, applying the quality governor's reductions and culling
+     * components which lie outside of the clip. Shared by paint and TileRenderer, so that a tiled render matches a paint exactly.
+     *
+     * @param g            the graphics instance, already restricted to the area being drawn
+     * @param alpha        the interpolation alpha
+     * @param metrics      the metrics draw times are recorded to, or null
+     * @param cachedLayers copies of the cached layers, drawn instead of the caches themselves, or null to draw the caches
+     * @param cullArea     the area components are culled against, or null to cull against the clip of the graphics instance
+     * @param tracking     whether or not drawn and culled components are counted, and their painted bounds recorded
+     */
+    void drawGraphics(Graphics g, double alpha, FrameMetrics metrics, LayerSnapshots cachedLayers, Rectangle cullArea, boolean tracking)
+    {
+        QualityGovernor governor = this.governor;
+        boolean governing = governor != null && governor.isEnabled();
+        if(governing && governor.isAntialiasingDisabled() && g instanceof Graphics2D)
+            QualityGovernor.applyFastHints((Graphics2D) g);
+        boolean skipLowPriority = governing && !lowPriorityLayers.isEmpty() && governor.isSkippingLowPriorityLayers();
+        draw(g, alpha);
+
+        // Read after the background is drawn, so the clip is in the same coordinates the components are drawn in
+        Rectangle clip = cullArea != null ? cullArea : g.getClipBounds();
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+        {
+            if(skipLowPriority && lowPriorityLayers.contains(component.getLayer()))
+            {
+                component = components.lastOfLayer(component);
+                continue;
+            }
+            if(!layerCaches.isEmpty())
+            {
+                LayerCache cache = layerCaches.get(component.getLayer());
+                if(cache != null)
+                {
+                    long start = metrics != null ? System.nanoTime() : 0;
+                    if(cachedLayers == null)
+                        cache.draw(g, this, component, alpha);
+                    else
+                        cachedLayers.draw(g, component.getLayer());
+                    if(metrics != null)
+                        metrics.recordDraw(component.getLayer(), null, System.nanoTime() - start);
+                    component = components.lastOfLayer(component);
+                    continue;
+                }
+            }
+
+            Rectangle bounds = component.getBounds();
+            if(bounds != null && clip != null && !bounds.intersects(clip))
+            {
+                if(tracking)
+                    culledCount++; // Nothing this component draws would be visible
+                continue;
+            }
+            if(metrics != null)
+            {
+                long start = System.nanoTime();
+                component.draw(g, alpha);
+                metrics.recordDraw(component.getLayer(), component.getClass(), System.nanoTime() - start);
+            }
+            else
+                component.draw(g, alpha);
+            if(tracking)
+            {
+                drawnCount++;
+                component.recordPaintedBounds(bounds);
+            }
+        }
+    }
+
+    /**
+     * Copies every cached layer of this panel into an image of its own, rendering any cache which is out of date first,
+     * so that the layers can be drawn from several threads at once. Used by LayerSnapshots.
+     *
+     * @param alpha the interpolation alpha
+     * @return the snapshots, by layer
+     */
+    HashMap<Integer, BufferedImage> snapshotLayerCaches(double alpha)
+    {
+        HashMap<Integer, BufferedImage> snapshots = new HashMap<>();
+        if(layerCaches.isEmpty())
+            return snapshots;
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+        {
+            LayerCache cache = layerCaches.get(component.getLayer());
+            if(cache != null)
+            {
+                snapshots.put(component.getLayer(), cache.snapshot(this, component, alpha));
+                component = components.lastOfLayer(component);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Used as an additional draw function, run prior to any of the components.
+     * Can be used for handing background graphics separate to any of its GraphicalComponents.
+     *
+     * @param g the graphics instance
+     */
+    public void draw(Graphics g)
+    {
+
+    }
+
+    /**
+     * Interpolated version of the additional draw function. By default, this simply calls draw(g).
+     * Can be overridden to render state in between the previous and current update ticks.
+     *
+     * @param g     the graphics instance
+     * @param alpha how far (from 0 to 1) the frame lies between the previous update tick and the next one
+     */
+    public void draw(Graphics g, double alpha)
+    {
+        draw(g);
+    }
+
+    /**
+     * Run directly from a host application once per update tick. Not meant to be overridden, as it contains implementation for running components.
+     *
+     * @param dt the length of the tick, in seconds
+     */
+    protected final void updateEvent(double dt)
+    {
+        clearPending();
+        update(dt);
+
+        // Non-critical components skip all but one in every few ticks while the quality governor reduces updates
+        QualityGovernor governor = this.governor;
+        int stride = governor == null ? 1 : governor.getUpdateStride();
+        boolean deferring = stride > 1 && reducedTicks++ % stride != 0;
+
+        boolean parallel = updatePool != null;
+        if(parallel)
+            updateInParallel(dt, deferring);
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+            if(!parallel || !component.isIndependent())
+                updateComponent(component, dt, deferring);
+        clearPending();
+    }
+
+    /**
+     * Updates a single component, or defers its update to a later tick if it is not critical and updates are being deferred.
+     * Any time deferred from earlier ticks is added to the length of the update.
+     *
+     * @param component the component
+     * @param dt        the length of the tick, in seconds
+     * @param deferring whether or not non-critical components are skipping this tick
+     */
+    private static void updateComponent(GraphicalComponent component, double dt, boolean deferring)
+    {
+        if(component.isCritical())
+            component.update(dt);
+        else if(deferring)
+            component.deferredTime += dt;
+        else
+        {
+            double elapsed = dt + component.deferredTime;
+            component.deferredTime = 0;
+            component.update(elapsed);
+        }
+    }
+
+    /**
+     * Updates every independent component on the update pool, waiting for all of them to finish.
+     *
+     * @param dt        the length of the tick, in seconds
+     * @param deferring whether or not non-critical components are skipping this tick
+     */
+    private void updateInParallel(double dt, boolean deferring)
+    {
+        int count = 0;
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+        {
+            if(component.isIndependent())
+            {
+                if(count == parallelBatch.length)
+                    parallelBatch = Arrays.copyOf(parallelBatch, Math.max(count * 2, 64));
+                parallelBatch[count++] = component;
+            }
+        }
+        if(count == 0)
+            return;
+
+        int threshold = Math.max(count / (updatePool.getParallelism() * 4), 16);
+        parallelUpdating = true;
+        try
+        {
+            updatePool.invoke(new ParallelUpdate(parallelBatch, 0, count, threshold, dt, deferring));
+        }
+        finally
+        {
+            parallelUpdating = false;
+            Arrays.fill(parallelBatch, 0, count, null);
+            GraphicalComponent component;
+            while((component = deferredDirty.poll()) != null)
+                markDirty(component);
+            while((component = deferredHitboxes.poll()) != null)
+                hitboxMoved(component);
+        }
+    }
+
+    /**
+     * Updates a range of independent components, splitting it in half until it is small enough to update directly.
+     */
+    private static final class ParallelUpdate extends RecursiveAction
+    {
+        /**
+         * Serial version of the task, which is never actually serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The snapshot of independent components.
+         */
+        private final GraphicalComponent[] batch;
+        /**
+         * The range of the snapshot to update, and the size below which a range is no longer split.
+         */
+        private final int from, to, threshold;
+        /**
+         * The length of the tick, in seconds.
+         */
+        private final double dt;
+        /**
+         * Whether or not non-critical components are skipping this tick.
+         */
+        private final boolean deferring;
+
+        /**
+         * Constructor for ParallelUpdate.
+         *
+         * @param batch     the snapshot of independent components
+         * @param from      the first index to update
+         * @param to        the index after the last one to update
+         * @param threshold the size below which a range is no longer split
+         * @param dt        the length of the tick, in seconds
+         * @param deferring whether or not non-critical components are skipping this tick
+         */
+        ParallelUpdate(GraphicalComponent[] batch, int from, int to, int threshold, double dt, boolean deferring)
+        {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.dt = dt;
+            this.deferring = deferring;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from <= threshold)
+            {
+                for(int i = from; i < to; i++)
+                    updateComponent(batch[i], dt, deferring);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParallelUpdate(batch, from, middle, threshold, dt, deferring),
+                    new ParallelUpdate(batch, middle, to, threshold, dt, deferring));
+        }
+    }
+
+    /**
+     * Sets whether or not components marked as independent are updated in parallel, on the common ForkJoinPool.
+     * Every independent component finishes updating before the remaining components are updated and before the panel is drawn.
+     *
+     * @param parallelUpdate whether or not to update independent components in parallel
+     */
+    public void setParallelUpdate(boolean parallelUpdate)
+    {
+        setParallelUpdatePool(parallelUpdate ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Sets the pool that components marked as independent are updated on.
+     *
+     * @param updatePool the pool, or null to update every component on the calling thread
+     */
+    public void setParallelUpdatePool(ForkJoinPool updatePool)
+    {
+        this.updatePool = updatePool;
+    }
+
+    /**
+     * Returns whether or not independent components are updated in parallel.
+     *
+     * @return whether or not parallel updates are enabled
+     */
+    public boolean isParallelUpdate()
+    {
+        return updatePool != null;
+    }
+
+    /**
+     * Used as an additional update function, run prior to any of the components. Meant to be overridden, but not necessary.
+     * Called at a fixed tick rate by the host application, regardless of how often the panel is actually painted.
+     *
+     * @param dt the length of the tick, in seconds
+     */
+    public void update(double dt)
+    {
+    }
+
+    /**
+     * Returns how far (from 0 to 1) the current frame lies between the previous update tick and the next one.
+     *
+     * @return the interpolation alpha
+     */
+    public double getInterpolationAlpha()
+    {
+        return interpolationAlpha;
+    }
+
+    /**
+     * Sets the interpolation alpha used for the next paint.
+     *
+     * @param interpolationAlpha the interpolation alpha
+     */
+    void setInterpolationAlpha(double interpolationAlpha)
+    {
+        this.interpolationAlpha = interpolationAlpha;
+    }
+
+    /**
+     * Sets the framerate this panel is painted at, such as 10 for a menu or 144 for gameplay. The host application runs its
+     * frames at the highest framerate of the panels it is displaying, only repainting each panel once its own frame interval
+     * has elapsed, while updates still happen at the host's tick rate. Under active rendering, the whole application is
+     * rendered as a single image whenever any displayed panel is due, so every displayed panel is painted at the highest of their framerates.
+     *
+     * @param targetFPS the framerate, or 0 to use the host application's framerate
+     * @throws IllegalArgumentException if the framerate is negative.
+     */
+    public void setTargetFPS(int targetFPS) throws IllegalArgumentException
+    {
+        if(targetFPS < 0)
+            throw new IllegalArgumentException("Target FPS must not be negative: " + targetFPS);
+        this.targetFPS = targetFPS;
+        paintScheduled = false;
+    }
+
+    /**
+     * Returns the framerate this panel is painted at.
+     *
+     * @return the framerate, or 0 if the host application's framerate is used
+     */
+    public int getTargetFPS()
+    {
+        return targetFPS;
+    }
+
+    /**
+     * Returns whether or not this panel is due to be painted on a frame of the host application, and if so, schedules its next paint.
+     * A paint is due up to half a host frame early, so that a target framerate is kept on average rather than rounded down.
+     *
+     * @param now           the time of the frame, in nanoseconds
+     * @param frameInterval the time between frames of the host application, in nanoseconds
+     * @return whether or not the panel should be painted
+     */
+    boolean isPaintDue(long now, long frameInterval)
+    {
+        if(targetFPS == 0)
+            return true;
+        if(paintScheduled && now - nextPaint < -frameInterval / 2)
+            return false;
 
-            @Override
-            public void keyReleased(KeyEvent event)
-            {
-                // Calls the keyPressEvent function from here.
-                keyReleaseEvent(event);
-            }
-        });
+        long interval = 1_000_000_000L / targetFPS;
+        nextPaint = paintScheduled ? nextPaint + interval : now + interval;
+        if(nextPaint - now <= 0)
+            nextPaint = now + interval; // Fell behind; skips the missed paints instead of bursting through them
+        paintScheduled = true;
+        return true;
     }
 
-    @Override
-    public final void paint(Graphics g)
+    /**
+     * Suspends or resumes this panel. Called by the host application at the start of a frame.
+     * Any input still queued on suspension is discarded, as the host no longer dispatches it.
+     *
+     * @param suspended whether or not the panel should be suspended
+     */
+    void setSuspended(boolean suspended)
     {
-        clearPending();
-        draw(g);
-        Collections.sort(components);
-        for(GraphicalComponent component: components)
-            component.draw(g);
-        clearPending();
-        paintComponents(g);
+        if(this.suspended == suspended)
+            return;
+        this.suspended = suspended;
+        if(suspended)
+            inputQueue.clear();
+        else
+        {
+            paintScheduled = false;
+            if(dirtyRegionRepainting)
+                markAllDirty(); // Nothing was repainted while suspended
+        }
     }
 
     /**
-     * Used as an additional draw function, run prior to any of the components.
-     * Can be used for handing background graphics separate to any of its GraphicalComponents.
+     * Returns whether or not the host application has stopped updating and painting this panel, because it is not displayed.
      *
-     * @param g the graphics instance
+     * @return whether or not the panel is suspended
      */
-    public void draw(Graphics g)
+    public boolean isSuspended()
+    {
+        return suspended;
+    }
+
+    /**
+     * Sets whether or not this panel is suspended whenever it is not displayed, such as a hidden screen of a MultiPanel.
+     * A suspended panel is neither updated nor painted, and its simulation does not advance until it is resumed.
+     * Buffered input is not dispatched to it either, and is discarded rather than run late on resumption.
+     * Work which should stop while the panel is suspended, such as audio, can be paused and resumed by overriding panelHidden
+     * and panelShown, which a MultiPanel runs before the panel is suspended and before it is resumed.
+     * Enabled by default; disable it for panels whose simulation must keep running while hidden.
+     *
+     * @param suspendedWhenHidden whether or not the panel is suspended while hidden
+     */
+    public void setSuspendedWhenHidden(boolean suspendedWhenHidden)
     {
+        this.suspendedWhenHidden = suspendedWhenHidden;
+    }
 
+    /**
+     * Returns whether or not this panel is suspended whenever it is not displayed.
+     *
+     * @return whether or not the panel is suspended while hidden
+     */
+    public boolean isSuspendedWhenHidden()
+    {
+        return suspendedWhenHidden;
     }
 
     /**
@@ -120,32 +886,32 @@ public class SPComponent extends JPanel
      */
     protected final void mousePressEvent(MouseEvent event)
     {
-        activeMousePresses.add(event.getButton());
+        activeMousePresses.press(event.getButton());
         overridden = false;
-        boolean hitboxActivated = false;
 
         requestFocus(); // Automatically requests focus on this component when clicked.
         clearPending();
         mousePressed(event);
 
-        // Sorts by GraphicalComponent layer
-        Collections.sort(components);
-        for(int i = components.size() - 1; i >= 0; i--)
+        // Walks from the highest layer down. Only the top-most activated hitbox receives the click, and only the hitboxes
+        // indexed underneath the cursor are tested, until either one is activated or none are left
+        int candidates = hitboxGrid.markCandidates(event);
+        for(GraphicalComponent component = components.last(); component != null; component = component.previous)
         {
-            GraphicalComponent component = components.get(i);
             if(overridden)
                 continue;
-            if(!hitboxActivated)
+            if(candidates > 0 && hitboxGrid.isCandidate(component))
             {
+                candidates--;
                 GraphicalHitbox hitbox = component.getHitbox();
                 if(hitbox != null && hitbox.activated(event))
                 {
                     hitbox.whenClicked(event);
-                    component.getActiveHitboxActivations().add(event.getButton());
-                    hitboxActivated = true;
+                    component.activateHitbox(event.getButton());
+                    candidates = 0;
                 }
             }
-            component.getActiveMousePresses().add(event.getButton());
+            component.pressMouseButton(event.getButton());
             component.mousePressed(event);
         }
         clearPending();
@@ -169,22 +935,20 @@ public class SPComponent extends JPanel
      */
     protected final void mouseReleaseEvent(MouseEvent event)
     {
-        activeMousePresses.remove(event.getButton());
+        activeMousePresses.release(event.getButton());
 
         clearPending();
         mouseReleased(event);
 
-        Collections.sort(components);
-        for(int i = components.size() - 1; i >= 0; i--)
+        for(GraphicalComponent component = components.last(); component != null; component = component.previous)
         {
-            GraphicalComponent component = components.get(i);
-            if(component.getActiveHitboxActivations().remove(event.getButton()))
+            if(component.releaseHitbox(event.getButton()))
             {
                 GraphicalHitbox hitbox = component.getHitbox();
                 if(hitbox != null)
                     hitbox.whenReleased(event);
             }
-            if(component.getActiveMousePresses().remove(event.getButton()))
+            if(component.releaseMouseButton(event.getButton()))
                 component.mouseReleased(event);
         }
         clearPending();
@@ -199,6 +963,50 @@ public class SPComponent extends JPanel
     {
     }
 
+    /**
+     * Run directly from an application upon the movement of the mouse, with or without a button held. Not meant to be overridden,
+     * as it contains implementation for running components. Inside of an active host application, this runs at most once per frame.
+     *
+     * @param event the mouse event
+     */
+    protected final void mouseMoveEvent(MouseEvent event)
+    {
+        boolean dragged = event.getID() == MouseEvent.MOUSE_DRAGGED;
+
+        clearPending();
+        if(dragged)
+            mouseDragged(event);
+        else
+            mouseMoved(event);
+
+        for(GraphicalComponent component = components.last(); component != null; component = component.previous)
+        {
+            if(dragged)
+                component.mouseDragged(event);
+            else
+                component.mouseMoved(event);
+        }
+        clearPending();
+    }
+
+    /**
+     * Used as an additional mouseMoved function, run prior to any of the components. Meant to be overridden, but not necessary.
+     *
+     * @param event the mouse event
+     */
+    public void mouseMoved(MouseEvent event)
+    {
+    }
+
+    /**
+     * Used as an additional mouseDragged function, run prior to any of the components. Meant to be overridden, but not necessary.
+     *
+     * @param event the mouse event
+     */
+    public void mouseDragged(MouseEvent event)
+    {
+    }
+
     /**
      * Run directly from an application upon the click of the key. Not meant to be overridden, as it contains implementation for running components.
      *
@@ -207,19 +1015,17 @@ public class SPComponent extends JPanel
     protected final void keyPressEvent(KeyEvent event)
     {
         overridden = false;
-        activeKeys.add(event.getKeyCode());
+        activeKeys.press(event.getKeyCode());
 
         clearPending();
         keyPressed(event);
 
-        Collections.sort(components);
-        for(int i = components.size() - 1; i >= 0; i--)
+        for(GraphicalComponent component = components.last(); component != null; component = component.previous)
         {
-            GraphicalComponent component = components.get(i);
             if(overridden)
                 continue;
             component.keyPressed(event);
-            component.getActiveKeys().add(event.getKeyCode());
+            component.pressKey(event.getKeyCode());
         }
         clearPending();
     }
@@ -240,16 +1046,14 @@ public class SPComponent extends JPanel
      */
     protected final void keyReleaseEvent(KeyEvent event)
     {
-        activeKeys.remove(event.getKeyCode());
+        activeKeys.release(event.getKeyCode());
 
         clearPending();
         keyReleased(event);
 
-        Collections.sort(components);
-        for(int i = components.size() - 1; i >= 0; i--)
+        for(GraphicalComponent component = components.last(); component != null; component = component.previous)
         {
-            GraphicalComponent component = components.get(i);
-            if(component.getActiveKeys().remove(event.getKeyCode()))
+            if(component.releaseKey(event.getKeyCode()))
                 component.keyReleased(event);
         }
         clearPending();
@@ -265,28 +1069,32 @@ public class SPComponent extends JPanel
     }
 
     /**
-     * Adds a single component to the list of components.
+     * Adds a single component to the list of components. The component is inserted at the start of the next frame or event.
+     * Safe to call from any thread without blocking: everything the calling thread did to the component beforehand is visible
+     * to the event dispatch thread once the component is inserted.
      *
      * @param component the component to add
      * @return successful or not
      */
     public boolean addComponent(GraphicalComponent component)
     {
-        if(component.getParent() != null)
+        if(component.getParent() != null || !component.claimOwner(this))
             return false; // Cannot add the same component to multiple screens
         pendingAdditions.add(component);
         return true;
     }
 
     /**
-     * Removes the given component from the list of components.
+     * Removes the given component from the list of components. The component is removed at the start of the next frame or event,
+     * after which it may be added again, or is returned to its pool if it came from one. Safe to call from any thread without blocking, including for a component whose
+     * addition has not been processed yet.
      *
      * @param component the component
      * @return successful or not
      */
     public boolean removeComponent(GraphicalComponent component)
     {
-        if(components.contains(component))
+        if(component.claimRemoval(this))
         {
             pendingDeletions.add(component);
             return true;
@@ -295,64 +1103,488 @@ public class SPComponent extends JPanel
     }
 
     /**
-     * Removes all components that need to be deleted, and adds all components that need to be added..
+     * Removes every given component that belongs to this panel, in time proportional to the number of components given.
+     * Safe to call from any thread, like removeComponent.
+     *
+     * @param components the components
+     * @return the number of components queued for removal
+     */
+    public int removeComponents(Collection<? extends GraphicalComponent> components)
+    {
+        int removed = 0;
+        for(GraphicalComponent component: components)
+            if(removeComponent(component))
+                removed++;
+        return removed;
+    }
+
+    /**
+     * Removes every component of this panel which satisfies a condition, including components whose addition has not been processed yet.
+     * The removals are only queued, so this is safe to call from update, draw or input functions while the components are being walked.
+     * Must be called on the event dispatch thread.
+     *
+     * @param condition the condition
+     * @return the number of components queued for removal
+     */
+    public int removeComponentsIf(Predicate<? super GraphicalComponent> condition)
+    {
+        int removed = 0;
+        for(GraphicalComponent component = components.first(); component != null; component = component.next)
+            if(condition.test(component) && removeComponent(component))
+                removed++;
+        for(GraphicalComponent component: pendingAdditions)
+            if(condition.test(component) && removeComponent(component))
+                removed++;
+        return removed;
+    }
+
+    /**
+     * Returns whether or not a component is currently inside of this panel, in constant time.
+     * Components whose addition or removal has not been processed yet are not counted.
+     *
+     * @param component the component
+     * @return whether or not the component is inside of this panel
+     */
+    public boolean containsComponent(GraphicalComponent component)
+    {
+        return components.contains(component);
+    }
+
+    /**
+     * Returns the number of GraphicalComponents currently inside of this panel.
+     *
+     * @return the number of components
+     */
+    public int getGraphicalComponentCount()
+    {
+        return components.size();
+    }
+
+    /**
+     * Returns the components of this panel, in drawing order.
+     *
+     * @return the component list
+     */
+    LayeredComponentList getComponentList()
+    {
+        return components;
+    }
+
+    /**
+     * Removes all components that need to be deleted, and adds all components that need to be added.
+     * Additions are processed first, so a component added and removed within the same frame is never left behind.
+     * A removal can still overtake its addition, when another thread queues the addition after the additions were drained;
+     * the removal is then retried on the next call, and the component keeps its owner until it has actually been removed.
+     * Only ever called on the thread driving the panel (normally the event dispatch thread), which is the sole consumer of the pending queues.
      */
-    private void clearPending()
+    void clearPending()
     {
-        while(!pendingAdditions.isEmpty())
+        GraphicalComponent component;
+        while((component = pendingAdditions.poll()) != null)
         {
-            GraphicalComponent component = pendingAdditions.poll();
             component.setParent(this);
             components.add(component);
+            hitboxGrid.update(component);
+            markDirty(component);
         }
-        while(!pendingDeletions.isEmpty())
+        while((component = pendingDeletions.poll()) != null)
         {
-            GraphicalComponent component = pendingDeletions.poll();
+            if(!components.remove(component))
+            {
+                retriedDeletions.add(component); // Its addition has not been processed yet
+                continue;
+            }
+            hitboxGrid.remove(component);
+            invalidateLayer(component.getLayer());
+            Rectangle painted = component.paintedBounds;
+            if(painted == null)
+                dirtyRegions.addEverything();
+            else
+                dirtyRegions.add(painted);
+            component.paintedBounds = null;
             component.setParent(null);
-            components.remove(component);
+            component.releaseOwner();
+            if(component.pool != null)
+                component.pool.release(component);
+        }
+        if(!retriedDeletions.isEmpty())
+        {
+            pendingDeletions.addAll(retriedDeletions);
+            retriedDeletions.clear();
+        }
+    }
+
+    /**
+     * Marks a component as needing to be repainted.
+     *
+     * @param component the component
+     */
+    void markDirty(GraphicalComponent component)
+    {
+        if(parallelUpdating)
+        {
+            deferredDirty.add(component);
+            return;
+        }
+        if(!layerCaches.isEmpty() && components.contains(component))
+            invalidateLayer(component.getLayer());
+        if(!component.dirty && components.contains(component))
+        {
+            component.dirty = true;
+            dirtyComponents.add(component);
+        }
+    }
+
+    /**
+     * Marks a region of this panel as needing to be repainted on the next frame. Only used with dirty region repainting.
+     *
+     * @param region the region
+     */
+    public void markDirty(Rectangle region)
+    {
+        dirtyRegions.add(region);
+    }
+
+    /**
+     * Marks this entire panel as needing to be repainted on the next frame. Only used with dirty region repainting.
+     */
+    public void markAllDirty()
+    {
+        dirtyRegions.addEverything();
+    }
+
+    /**
+     * Immediately repaints the regions of this panel that have been marked dirty, merged into a few clip rectangles.
+     * Nothing is painted if nothing has changed. Must be called on the event dispatch thread.
+     */
+    public void repaintDirtyRegions()
+    {
+        clearPending();
+        for(GraphicalComponent component: dirtyComponents)
+        {
+            component.dirty = false;
+            if(!components.contains(component))
+                continue; // Removed since being marked; its region was already marked on removal
+            Rectangle bounds = component.getBounds();
+            if(bounds == null)
+            {
+                dirtyRegions.addEverything();
+                continue;
+            }
+            if(component.paintedBounds != null)
+                dirtyRegions.add(component.paintedBounds);
+            dirtyRegions.add(bounds);
+        }
+        dirtyComponents.clear();
+
+        culledCount = drawnCount = 0;
+        if(dirtyRegions.isEmpty())
+            return;
+        countingFrame = true;
+        try
+        {
+            if(dirtyRegions.isEverything())
+                paintImmediately(0, 0, getWidth(), getHeight());
+            else
+            {
+                int count = dirtyRegions.merge(maxDirtyRegions, clipRegions);
+                dirtyRegions.clear(); // Anything marked while painting is repainted on the next frame
+                for(int i = 0; i < count; i++)
+                    paintImmediately(clipRegions.get(i));
+            }
+        }
+        finally
+        {
+            countingFrame = false;
+        }
+    }
+
+    /**
+     * Unmarks every dirty component and region.
+     */
+    private void clearDirty()
+    {
+        for(GraphicalComponent component: dirtyComponents)
+            component.dirty = false;
+        dirtyComponents.clear();
+        dirtyRegions.clear();
+    }
+
+    /**
+     * Sets whether or not only the regions marked dirty are repainted on each frame of the host application,
+     * instead of the entire panel. Every component must then call markDirty() whenever it changes, or the change is never painted.
+     * Components without bounds repaint the entire panel when marked, so only those with bounds benefit from this.
+     *
+     * @param dirtyRegionRepainting whether or not to use dirty region repainting
+     */
+    public void setDirtyRegionRepainting(boolean dirtyRegionRepainting)
+    {
+        this.dirtyRegionRepainting = dirtyRegionRepainting;
+        markAllDirty();
+    }
+
+    /**
+     * Returns whether or not only the regions marked dirty are repainted on each frame.
+     *
+     * @return whether or not dirty region repainting is used
+     */
+    public boolean isDirtyRegionRepainting()
+    {
+        return dirtyRegionRepainting;
+    }
+
+    /**
+     * Sets the maximum number of clip rectangles the dirty regions are merged into per frame.
+     *
+     * @param maxDirtyRegions the maximum number of clip rectangles
+     */
+    public void setMaxDirtyRegions(int maxDirtyRegions)
+    {
+        this.maxDirtyRegions = Math.max(maxDirtyRegions, 1);
+    }
+
+    /**
+     * Sets whether or not a layer is rendered once into an offscreen image and blitted on later frames, instead of being
+     * redrawn component by component. Suited to layers that rarely change, such as backgrounds and grids.
+     * The cache is rendered again whenever a component in the layer is added, removed, or marked dirty.
+     * Cached layers are rendered over the area (0, 0, width, height), in the coordinates the components are drawn in.
+     *
+     * @param layer  the layer
+     * @param cached whether or not the layer should be cached
+     */
+    public void setLayerCached(int layer, boolean cached)
+    {
+        if(cached)
+            layerCaches.putIfAbsent(layer, new LayerCache());
+        else
+        {
+            LayerCache cache = layerCaches.remove(layer);
+            if(cache != null)
+                cache.flush();
+        }
+    }
+
+    /**
+     * Sets whether or not a layer is low priority, meaning that it is no longer drawn once the host application's QualityGovernor
+     * has degraded quality far enough. Suited to purely decorative layers, such as particles or ambient effects.
+     *
+     * @param layer       the layer
+     * @param lowPriority whether or not the layer is low priority
+     */
+    public void setLayerLowPriority(int layer, boolean lowPriority)
+    {
+        if(lowPriority)
+            lowPriorityLayers.add(layer);
+        else
+            lowPriorityLayers.remove(layer);
+    }
+
+    /**
+     * Returns whether or not a layer is low priority.
+     *
+     * @param layer the layer
+     * @return whether or not the layer is low priority
+     */
+    public boolean isLayerLowPriority(int layer)
+    {
+        return lowPriorityLayers.contains(layer);
+    }
+
+    /**
+     * Returns whether or not a layer is cached.
+     *
+     * @param layer the layer
+     * @return whether or not the layer is cached
+     */
+    public boolean isLayerCached(int layer)
+    {
+        return layerCaches.containsKey(layer);
+    }
+
+    /**
+     * Forces a cached layer to be rendered again before it is next drawn, such as after a component in it changes without
+     * being marked dirty. Does nothing if the layer is not cached.
+     *
+     * @param layer the layer
+     */
+    public void invalidateLayer(int layer)
+    {
+        LayerCache cache = layerCaches.get(layer);
+        if(cache != null)
+            cache.invalidate();
+    }
+
+    /**
+     * Sets the area of this panel that components are culled against, in addition to the clip of each paint.
+     * Components whose bounds lie entirely outside of it are not drawn. By default, the visible area of the panel is used,
+     * which only differs from the panel's bounds when it is partially scrolled out of view.
+     *
+     * @param viewport the viewport, or null to use the visible area
+     */
+    public void setViewport(Rectangle viewport)
+    {
+        this.viewport = viewport == null ? null : new Rectangle(viewport);
+    }
+
+    /**
+     * Returns the area of this panel that components are culled against, if one has been set.
+     *
+     * @return the viewport, or null if the visible area is used
+     */
+    public Rectangle getViewport()
+    {
+        return viewport == null ? null : new Rectangle(viewport);
+    }
+
+    /**
+     * Returns the number of components that were skipped in the last frame for lying entirely outside of the clip or viewport.
+     *
+     * @return the number of culled components
+     */
+    public int getCulledCount()
+    {
+        return culledCount;
+    }
+
+    /**
+     * Returns the number of components that were drawn in the last frame.
+     * When dirty region repainting, a component overlapping several clip rectangles is counted once for each.
+     *
+     * @return the number of drawn components
+     */
+    public int getDrawnCount()
+    {
+        return drawnCount;
+    }
+
+    /**
+     * Re-indexes the hitbox of a component after it has been changed or moved.
+     *
+     * @param component the component
+     */
+    void hitboxMoved(GraphicalComponent component)
+    {
+        if(parallelUpdating)
+        {
+            deferredHitboxes.add(component);
+            return;
         }
+        if(components.contains(component))
+            hitboxGrid.update(component);
+    }
+
+    /**
+     * Sets the size of the cells in the spatial index used for hitbox hit-testing.
+     * Smaller cells mean fewer hitboxes have their activated function tested per click, but larger hitboxes take up more cells.
+     * Every component still receives the press itself, regardless of the cell size.
+     *
+     * @param cellSize the width and height of a single cell, in pixels
+     * @throws IllegalArgumentException if the cell size is not positive.
+     */
+    public void setHitboxCellSize(int cellSize) throws IllegalArgumentException
+    {
+        if(cellSize <= 0)
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        hitboxGrid.setCellSize(cellSize, components);
     }
 
     /**
-     * Returns the x-position of the mouse
+     * Returns the x-position of the mouse, as of the latest pointer snapshot.
+     * The snapshot is taken once per frame by the host application, and follows the position of each mouse event as it is dispatched.
+     * Outside of an active host application nothing takes the snapshot, so the position is queried from the system on every call instead.
      *
      * @return the x-position
      */
     public int getMouseX()
     {
-        Point mouseLocation = MouseInfo.getPointerInfo().getLocation();
-        SwingUtilities.convertPointFromScreen(mouseLocation, this);
-        return (int) mouseLocation.getX();
+        if(!pointerCaptured || !isDrivenByHost())
+            capturePointer();
+        return pointer.x;
     }
 
     /**
-     * Returns the y-position of the mouse
+     * Returns the y-position of the mouse, as of the latest pointer snapshot.
+     * The snapshot is taken once per frame by the host application, and follows the position of each mouse event as it is dispatched.
+     * Outside of an active host application nothing takes the snapshot, so the position is queried from the system on every call instead.
      *
      * @return the y-position
      */
     public int getMouseY()
     {
-        Point mouseLocation = MouseInfo.getPointerInfo().getLocation();
+        if(!pointerCaptured || !isDrivenByHost())
+            capturePointer();
+        return pointer.y;
+    }
+
+    /**
+     * Copies the position of the mouse, as of the latest pointer snapshot, into a point. Unlike getMousePosition(),
+     * this does not query the system, and the position stays the same for the rest of the frame.
+     *
+     * @param destination the point to copy the position into
+     * @return the destination point
+     */
+    public Point getPointerPosition(Point destination)
+    {
+        destination.setLocation(getMouseX(), getMouseY());
+        return destination;
+    }
+
+    /**
+     * Returns a copy of the position of the mouse, as of the latest pointer snapshot.
+     *
+     * @return the position
+     */
+    public Point getPointerPosition()
+    {
+        return getPointerPosition(new Point());
+    }
+
+    /**
+     * Queries the system for the current position of the mouse relative to this panel, bypassing the pointer snapshot.
+     * This is a native call, so it is best avoided in code that runs for every component on every frame.
+     *
+     * @return the position, or null if it cannot be determined (for example, in a headless environment).
+     */
+    public Point queryPointerPosition()
+    {
+        if(GraphicsEnvironment.isHeadless())
+            return null;
+        PointerInfo info = MouseInfo.getPointerInfo();
+        if(info == null)
+            return null;
+        Point mouseLocation = info.getLocation();
         SwingUtilities.convertPointFromScreen(mouseLocation, this);
-        return (int) mouseLocation.getY();
+        return mouseLocation;
+    }
+
+    /**
+     * Updates the pointer snapshot with the current position of the mouse. Called by the host application once per frame.
+     * Keeps the previous snapshot if the position cannot be determined.
+     */
+    public void capturePointer()
+    {
+        Point mouseLocation = queryPointerPosition();
+        if(mouseLocation != null)
+            pointer.setLocation(mouseLocation);
+        pointerCaptured = true;
     }
 
     /**
-     * Returns the list of active keys being held.
+     * Returns a read-only view of the active keys being held.
      *
-     * @return the list of keys
+     * @return the set of keys
      */
-    public HashSet<Integer> getActiveKeys()
+    public Set<Integer> getActiveKeys()
     {
         return activeKeys;
     }
 
     /**
-     * Returns the list of active mouse buttons being held
+     * Returns a read-only view of the active mouse buttons being held
      *
-     * @return the list of mouse presses
+     * @return the set of mouse presses
      */
-    public HashSet<Integer> getActiveMousePresses()
+    public Set<Integer> getActiveMousePresses()
     {
         return activeMousePresses;
     }
@@ -365,7 +1597,7 @@ public class SPComponent extends JPanel
      */
     public boolean isKeyHeld(int keyCode)
     {
-        return activeKeys.contains(keyCode);
+        return activeKeys.isHeld(keyCode);
     }
 
     /**
@@ -376,7 +1608,7 @@ public class SPComponent extends JPanel
      */
     public boolean isMouseButtonHeld(int buttonCode)
     {
-        return activeMousePresses.contains(buttonCode);
+        return activeMousePresses.isHeld(buttonCode);
     }
 
     /**
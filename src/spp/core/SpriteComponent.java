@@ -0,0 +1,138 @@
+package spp.core;
+
+import java.awt.*;
+
+/**
+ * A GraphicalComponent which draws a single image from a TextureAtlas at a position and size.
+ * The sprite reports its bounds, so it takes part in culling and dirty region repainting, and marks itself dirty whenever it
+ * is moved, resized, or given a new image. Sprites drawing from the same atlas share a single accelerated source image.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class SpriteComponent extends GraphicalComponent
+{
+    /**
+     * The atlas region this sprite draws.
+     */
+    private TextureAtlas.Region region;
+    /**
+     * The position of the sprite.
+     */
+    private double x, y;
+    /**
+     * The screen bounds of the sprite, kept up to date as it moves.
+     */
+    private final Rectangle bounds;
+
+    /**
+     * Constructor for SpriteComponent, drawing the region at its own size.
+     *
+     * @param region the atlas region
+     */
+    public SpriteComponent(TextureAtlas.Region region)
+    {
+        this(0, region);
+    }
+
+    /**
+     * Constructor for SpriteComponent, drawing the region at its own size.
+     *
+     * @param layer  the layer of the component.
+     * @param region the atlas region
+     */
+    public SpriteComponent(int layer, TextureAtlas.Region region)
+    {
+        super(layer);
+        this.region = region;
+        bounds = new Rectangle(0, 0, region.getWidth(), region.getHeight());
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        region.draw(g, bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * Returns the screen bounds of the sprite. The rectangle is updated in place as the sprite moves, and must not be modified.
+     *
+     * @return the bounds
+     */
+    @Override
+    public Rectangle getBounds()
+    {
+        return bounds;
+    }
+
+    /**
+     * Moves the sprite.
+     *
+     * @param x the x-position
+     * @param y the y-position
+     */
+    public void setPosition(double x, double y)
+    {
+        this.x = x;
+        this.y = y;
+        int drawX = (int) Math.round(x), drawY = (int) Math.round(y);
+        if(drawX != bounds.x || drawY != bounds.y)
+        {
+            bounds.setLocation(drawX, drawY);
+            markDirty();
+        }
+    }
+
+    /**
+     * Sets the size the sprite's image is scaled to.
+     *
+     * @param width  the width
+     * @param height the height
+     */
+    public void setSize(int width, int height)
+    {
+        bounds.setSize(width, height);
+        markDirty();
+    }
+
+    /**
+     * Sets the atlas region this sprite draws, without changing its size.
+     *
+     * @param region the atlas region
+     */
+    public void setRegion(TextureAtlas.Region region)
+    {
+        this.region = region;
+        markDirty();
+    }
+
+    /**
+     * Returns the atlas region this sprite draws.
+     *
+     * @return the atlas region
+     */
+    public TextureAtlas.Region getRegion()
+    {
+        return region;
+    }
+
+    /**
+     * Returns the x-position of the sprite.
+     *
+     * @return the x-position
+     */
+    public double getX()
+    {
+        return x;
+    }
+
+    /**
+     * Returns the y-position of the sprite.
+     *
+     * @return the y-position
+     */
+    public double getY()
+    {
+        return y;
+    }
+}
@@ -0,0 +1,230 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+
+/**
+ * A single large image that many smaller images are packed into at runtime, to be drawn by SpriteComponents.
+ * Sprites which share an atlas all draw from the same source image, so Java2D does not need to switch textures between them,
+ * and the atlas is created to match the screen's GraphicsConfiguration so it can be cached in video memory and drawn accelerated.
+ * Images are packed left to right into rows ("shelves"), with a pixel of padding around each so that scaled sprites do not
+ * bleed into their neighbours.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class TextureAtlas
+{
+    /**
+     * A rectangular region of an atlas holding a single packed image.
+     */
+    public static final class Region
+    {
+        /**
+         * The atlas this region belongs to.
+         */
+        private final TextureAtlas atlas;
+        /**
+         * The bounds of the region within the atlas image.
+         */
+        private final int x, y, width, height;
+
+        /**
+         * Constructor for Region.
+         *
+         * @param atlas  the atlas
+         * @param x      the x-position within the atlas image
+         * @param y      the y-position within the atlas image
+         * @param width  the width
+         * @param height the height
+         */
+        private Region(TextureAtlas atlas, int x, int y, int width, int height)
+        {
+            this.atlas = atlas;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Draws this region, scaled to fit a rectangle.
+         *
+         * @param g       the graphics instance
+         * @param dx      the x-position to draw at
+         * @param dy      the y-position to draw at
+         * @param dwidth  the width to draw with
+         * @param dheight the height to draw with
+         */
+        public void draw(Graphics g, int dx, int dy, int dwidth, int dheight)
+        {
+            g.drawImage(atlas.image, dx, dy, dx + dwidth, dy + dheight, x, y, x + width, y + height, null);
+        }
+
+        /**
+         * Returns the atlas this region belongs to.
+         *
+         * @return the atlas
+         */
+        public TextureAtlas getAtlas()
+        {
+            return atlas;
+        }
+
+        /**
+         * Returns the width of the packed image.
+         *
+         * @return the width
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+
+        /**
+         * Returns the height of the packed image.
+         *
+         * @return the height
+         */
+        public int getHeight()
+        {
+            return height;
+        }
+    }
+
+    /**
+     * The empty pixels left around every packed image.
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * The image every region is packed into.
+     */
+    private final BufferedImage image;
+    /**
+     * Maps names to the regions packed under them.
+     */
+    private final HashMap<String, Region> regions;
+    /**
+     * The x-position the next image is packed at within the current shelf.
+     */
+    private int shelfX;
+    /**
+     * The y-position of the current shelf.
+     */
+    private int shelfY;
+    /**
+     * The height of the tallest image in the current shelf.
+     */
+    private int shelfHeight;
+
+    /**
+     * Constructor for TextureAtlas, creating an atlas compatible with the default screen.
+     *
+     * @param width  the width of the atlas image
+     * @param height the height of the atlas image
+     */
+    public TextureAtlas(int width, int height)
+    {
+        this(width, height, GraphicsEnvironment.isHeadless() ? null :
+                GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration());
+    }
+
+    /**
+     * Constructor for TextureAtlas, creating an atlas compatible with a specific graphics configuration.
+     *
+     * @param width  the width of the atlas image
+     * @param height the height of the atlas image
+     * @param gc     the graphics configuration, or null to use a plain ARGB image
+     */
+    public TextureAtlas(int width, int height, GraphicsConfiguration gc)
+    {
+        if(gc == null)
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        else
+            image = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        regions = new HashMap<>();
+    }
+
+    /**
+     * Packs an image into the atlas.
+     *
+     * @param image the image, which must already be fully loaded
+     * @return the region the image was packed into
+     * @throws IllegalArgumentException if the size of the image is not known.
+     * @throws IllegalStateException if there is no room left in the atlas for the image.
+     */
+    public synchronized Region add(Image image) throws IllegalArgumentException, IllegalStateException
+    {
+        int width = image.getWidth(null), height = image.getHeight(null);
+        if(width < 0 || height < 0)
+            throw new IllegalArgumentException("Image has not finished loading");
+
+        int paddedWidth = width + PADDING * 2, paddedHeight = height + PADDING * 2;
+        int x = shelfX, y = shelfY, rowHeight = shelfHeight;
+        if(x + paddedWidth > this.image.getWidth())
+        {
+            // Starts a new shelf underneath the current one
+            y += rowHeight;
+            x = 0;
+            rowHeight = 0;
+        }
+        if(paddedWidth > this.image.getWidth() || y + paddedHeight > this.image.getHeight())
+            throw new IllegalStateException("No room left in atlas for a " + width + "x" + height + " image");
+
+        Region region = new Region(this, x + PADDING, y + PADDING, width, height);
+        Graphics2D g = this.image.createGraphics();
+        try
+        {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(image, region.x, region.y, null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        shelfX = x + paddedWidth;
+        shelfY = y;
+        shelfHeight = Math.max(rowHeight, paddedHeight);
+        return region;
+    }
+
+    /**
+     * Packs an image into the atlas under a name, so its region can be looked up later.
+     *
+     * @param name  the name
+     * @param image the image, which must already be fully loaded
+     * @return the region the image was packed into
+     * @throws IllegalArgumentException if the size of the image is not known.
+     * @throws IllegalStateException if there is no room left in the atlas for the image.
+     */
+    public synchronized Region add(String name, Image image) throws IllegalArgumentException, IllegalStateException
+    {
+        Region region = add(image);
+        regions.put(name, region);
+        return region;
+    }
+
+    /**
+     * Returns the region an image was packed into under a name.
+     *
+     * @param name the name
+     * @return the region, or null if no image was packed under the name.
+     */
+    public synchronized Region get(String name)
+    {
+        return regions.get(name);
+    }
+
+    /**
+     * Returns the image every region is packed into.
+     *
+     * @return the atlas image
+     */
+    public BufferedImage getImage()
+    {
+        return image;
+    }
+}
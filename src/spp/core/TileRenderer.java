@@ -0,0 +1,229 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Renders an SPComponent into a large offscreen image (video walls, thumbnails, recordings) using every core.
+ * The image is split into tiles, which are rendered in parallel on a worker pool, each through its own Graphics2D clipped
+ * to the tile, so the tiles composite into the target image without overlapping.
+ * <p>
+ * Every tile is drawn through the same path SPComponent.paint draws the panel with: the viewport, layer caches, low priority
+ * layers and the QualityGovernor's rendering hints all apply, and the panel's draw function and its components are drawn
+ * one after another through a single graphics instance, so graphics state carries over between them as it does when painting.
+ * Components are also culled against the area a paint into the whole image would cull against, rather than against the
+ * tile, since skipping a component could change the graphics state the next one inherits. Every tile issues the draw
+ * calls of every visible component, and Java2D discards whatever lies outside of the tile, so the work which is split
+ * between the cores is the rasterization, which dominates for large images.
+ * <p>
+ * The result is identical to painting the panel into the image at the same scale. Java2D computes some pixels relative to
+ * where the clip begins, so the tiles are laid out to begin where a paint would: each tile is a strip across the whole
+ * width of the image, strips are a multiple of the 32 rows Java2D fills paints in at a time, and they are aligned to the
+ * top of the painted area. Cached layers are scaled into the image once, as a paint would scale them, and copied into each
+ * tile (see LayerSnapshots). One case remains which only the JVM can rule out: on Java 10 and later, the Marlin renderer
+ * clips antialiased shapes to the clip before rasterizing them, which can move the edges of shapes reaching far outside of
+ * a tile by a fraction of a pixel. Running with {@code -Dsun.java2d.renderer.clip=false} turns this off.
+ * <p>
+ * Because the same component may be drawn into several tiles at once, the draw functions of the panel and its components
+ * must not modify any state. The panel must not change while it is being rendered, so rendering should be done from the
+ * thread driving the panel (normally the event dispatch thread). Swing children of the panel are not rendered.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class TileRenderer
+{
+    /**
+     * The number of rows Java2D fills paints in at a time, which the height of every tile is a multiple of.
+     */
+    private static final int ROW_BLOCK = 32;
+    /**
+     * The height of a single tile, in pixels.
+     */
+    private final int tileSize;
+    /**
+     * The pool tiles are rendered on, or null to render every tile on the calling thread.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Constructor for TileRenderer, rendering on the common ForkJoinPool.
+     *
+     * @param tileSize the height of a single tile, in pixels, rounded up to a multiple of 32
+     * @throws IllegalArgumentException if the tile size is not positive.
+     */
+    public TileRenderer(int tileSize) throws IllegalArgumentException
+    {
+        this(tileSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for TileRenderer.
+     *
+     * @param tileSize the height of a single tile, in pixels, rounded up to a multiple of 32
+     * @param pool     the pool tiles are rendered on, or null to render every tile on the calling thread
+     * @throws IllegalArgumentException if the tile size is not positive.
+     */
+    public TileRenderer(int tileSize, ExecutorService pool) throws IllegalArgumentException
+    {
+        if(tileSize <= 0)
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        this.tileSize = (tileSize + ROW_BLOCK - 1) / ROW_BLOCK * ROW_BLOCK;
+        this.pool = pool;
+    }
+
+    /**
+     * Renders a panel into an image at its own scale.
+     *
+     * @param panel  the panel
+     * @param target the image
+     * @return the image
+     */
+    public BufferedImage render(SPComponent panel, BufferedImage target)
+    {
+        return render(panel, target, 1);
+    }
+
+    /**
+     * Renders a panel into an image, scaled by a factor. Everything in the image is replaced.
+     * If the calling thread is interrupted, the tiles which have not started are cancelled and an exception is thrown,
+     * since the image would only be partially drawn.
+     *
+     * @param panel  the panel
+     * @param target the image
+     * @param scale  the factor panel coordinates are scaled by
+     * @return the image
+     * @throws IllegalStateException if rendering is interrupted, or a tile fails with a checked exception.
+     */
+    public BufferedImage render(SPComponent panel, BufferedImage target, double scale) throws IllegalStateException
+    {
+        // Everything which painting changes on the panel is done up front, so the tiles only read from it
+        panel.clearPending();
+        Rectangle visible = panel.getPaintViewport();
+        Rectangle area = visible != null ? new Rectangle(visible) : panel.getWidth() > 0 && panel.getHeight() > 0 ? new Rectangle(panel.getSize()) : null;
+        Rectangle cullArea, device;
+        Graphics2D g = target.createGraphics();
+        try
+        {
+            // The clip a paint into the whole image would have, in panel coordinates for culling and image coordinates for tiles
+            g.scale(scale, scale);
+            if(area != null)
+                g.clipRect(area.x, area.y, area.width, area.height);
+            cullArea = g.getClipBounds();
+            g.setTransform(new AffineTransform());
+            device = g.getClipBounds();
+        }
+        finally
+        {
+            g.dispose();
+        }
+        double alpha = panel.getInterpolationAlpha();
+        LayerSnapshots cachedLayers = new LayerSnapshots(panel, alpha, target, scale, area);
+
+        // Tiles start at the top of the painted area, so fills covering it are split into blocks of rows as they are in a paint
+        int start = device != null ? device.y % tileSize : 0;
+        ArrayList<Callable<Void>> tasks = new ArrayList<>(target.getHeight() / tileSize + 2);
+        for(int y = start > 0 ? start - tileSize : 0; y < target.getHeight(); y += tileSize)
+        {
+            int top = y;
+            tasks.add(() -> {
+                renderTile(panel, target, top, scale, area, cullArea, alpha, cachedLayers);
+                return null;
+            });
+        }
+
+        try
+        {
+            if(pool == null)
+            {
+                for(Callable<Void> task: tasks)
+                    task.call();
+            }
+            else
+            {
+                for(Future<Void> future: pool.invokeAll(tasks))
+                    future.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tile rendering was interrupted", e);
+        }
+        catch(ExecutionException e)
+        {
+            rethrow(e.getCause());
+        }
+        catch(Exception e)
+        {
+            rethrow(e);
+        }
+        return target;
+    }
+
+    /**
+     * Renders a single tile straight into the target, through a graphics instance clipped to the tile, then to the area the
+     * panel paints, just as painting would clip it. The tile is drawn in the same device coordinates as an untiled render,
+     * so neighbouring tiles line up.
+     *
+     * @param panel        the panel
+     * @param target       the image
+     * @param y            the y-position of the tile within the image
+     * @param scale        the factor panel coordinates are scaled by
+     * @param area         the area of the panel which is painted, or null if painting is not restricted
+     * @param cullArea     the area components are culled against
+     * @param alpha        the interpolation alpha
+     * @param cachedLayers copies of the panel's cached layers
+     */
+    private void renderTile(SPComponent panel, BufferedImage target, int y, double scale, Rectangle area, Rectangle cullArea,
+                            double alpha, LayerSnapshots cachedLayers)
+    {
+        Graphics2D g = target.createGraphics();
+        try
+        {
+            g.clipRect(0, y, target.getWidth(), tileSize);
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, y, target.getWidth(), tileSize);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.scale(scale, scale);
+            if(area != null)
+                g.clipRect(area.x, area.y, area.width, area.height);
+            panel.drawGraphics(g, alpha, null, cachedLayers, cullArea, false);
+        }
+        finally
+        {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Rethrows a failure from a tile on the calling thread.
+     *
+     * @param cause the failure
+     */
+    private static void rethrow(Throwable cause)
+    {
+        if(cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if(cause instanceof Error)
+            throw (Error) cause;
+        throw new IllegalStateException("Tile rendering failed", cause);
+    }
+
+    /**
+     * Returns the height of a single tile; every tile spans the whole width of the image.
+     *
+     * @return the tile size, in pixels
+     */
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+}
@@ -0,0 +1,171 @@
+package spp.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress test for adding and removing GraphicalComponents from many threads at once.
+ * Several producer threads add components to one of two competing panels and remove about half of them right away,
+ * while a single consumer thread keeps processing the pending queues, as the event dispatch thread would.
+ * Once everything has been processed, every kept component must be inside of its panel exactly once, and every
+ * removed component must be in neither panel and free to be added again. Exits with status 1 on the first failure.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class ComponentQueueStressTest
+{
+    /**
+     * The number of threads adding and removing components.
+     */
+    private static final int PRODUCERS = 8;
+    /**
+     * The number of components each producer creates per round.
+     */
+    private static final int COMPONENTS_PER_PRODUCER = 20_000;
+    /**
+     * The number of rounds run, each with fresh panels.
+     */
+    private static final int ROUNDS = 10;
+
+    /**
+     * Runs the stress test.
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the producers.
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        for(int round = 1; round <= ROUNDS; round++)
+        {
+            String failure = runRound();
+            if(failure != null)
+            {
+                System.err.println("Round " + round + " failed: " + failure);
+                System.exit(1);
+            }
+            System.out.println("Round " + round + " passed");
+        }
+    }
+
+    /**
+     * Runs a single round against a fresh pair of panels.
+     *
+     * @return a description of the first failure, or null if the round passed.
+     * @throws InterruptedException if interrupted while waiting for the producers.
+     */
+    private static String runRound() throws InterruptedException
+    {
+        SPComponent first = new SPComponent(), second = new SPComponent();
+        Set<GraphicalComponent> keptFirst = ConcurrentHashMap.newKeySet(), keptSecond = ConcurrentHashMap.newKeySet();
+        Set<GraphicalComponent> removed = ConcurrentHashMap.newKeySet();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(PRODUCERS);
+
+        for(int i = 0; i < PRODUCERS; i++)
+        {
+            Thread producer = new Thread(() -> {
+                try
+                {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for(int j = 0; j < COMPONENTS_PER_PRODUCER; j++)
+                    {
+                        GraphicalComponent component = new GraphicalComponent(random.nextInt(8));
+                        SPComponent panel = random.nextBoolean() ? first : second, other = panel == first ? second : first;
+                        if(!panel.addComponent(component))
+                            failure.compareAndSet(null, "a new component could not be added");
+                        if(other.addComponent(component))
+                            failure.compareAndSet(null, "a component was added to two panels");
+
+                        if(random.nextBoolean())
+                        {
+                            if(!panel.removeComponent(component))
+                                failure.compareAndSet(null, "an added component could not be removed");
+                            if(panel.removeComponent(component))
+                                failure.compareAndSet(null, "a component was queued for removal twice");
+                            removed.add(component);
+                        }
+                        else
+                            (panel == first ? keptFirst : keptSecond).add(component);
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }, "Producer " + i);
+            producer.start();
+        }
+
+        // This thread is the sole consumer, processing the queues while the producers are still running
+        start.countDown();
+        while(done.getCount() > 0)
+        {
+            first.clearPending();
+            second.clearPending();
+        }
+        done.await();
+        for(int i = 0; i < 2; i++) // A removal which overtook its addition is retried on the next call
+        {
+            first.clearPending();
+            second.clearPending();
+        }
+
+        if(failure.get() != null)
+            return failure.get();
+        String result = verify(first, keptFirst, removed);
+        if(result == null)
+            result = verify(second, keptSecond, removed);
+        if(result != null)
+            return result;
+
+        SPComponent third = new SPComponent();
+        for(GraphicalComponent component: removed)
+            if(!third.addComponent(component))
+                return "a removed component still has an owner";
+        return null;
+    }
+
+    /**
+     * Checks that a panel holds exactly the components it kept, each exactly once, and none of the removed components.
+     *
+     * @param panel   the panel
+     * @param kept    the components which should be inside of the panel
+     * @param removed the components which should be inside of no panel
+     * @return a description of the first failure, or null if the panel is correct.
+     */
+    private static String verify(SPComponent panel, Set<GraphicalComponent> kept, Set<GraphicalComponent> removed)
+    {
+        List<GraphicalComponent> walked = new ArrayList<>();
+        for(GraphicalComponent component = panel.getComponentList().first(); component != null; component = component.next)
+            walked.add(component);
+        Set<GraphicalComponent> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        unique.addAll(walked);
+
+        if(unique.size() != walked.size())
+            return (walked.size() - unique.size()) + " components are duplicated";
+        if(panel.getGraphicalComponentCount() != walked.size())
+            return "the component count " + panel.getGraphicalComponentCount() + " does not match the " + walked.size() + " components in the list";
+        if(walked.size() != kept.size())
+            return walked.size() + " components are inside of the panel, but " + kept.size() + " were kept";
+        for(GraphicalComponent component: kept)
+            if(!panel.containsComponent(component) || component.getParent() != panel)
+                return "a kept component is missing";
+        for(GraphicalComponent component: removed)
+            if(panel.containsComponent(component))
+                return "a removed component is still inside of the panel";
+        return null;
+    }
+}
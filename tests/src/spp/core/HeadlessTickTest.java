@@ -0,0 +1,69 @@
+package spp.core;
+
+/**
+ * Test for the virtual clock of a HeadlessHost. One second of virtual time is stepped at a range of framerates, from the
+ * tick rate down to a single frame per second, and every one of them must run exactly one second's worth of update ticks,
+ * however many of them a single step spans. Exits with status 1 on the first failure.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class HeadlessTickTest
+{
+    /**
+     * The tick rate of the host, in ticks per second.
+     */
+    private static final int TICK_RATE = 60;
+    /**
+     * The framerates the virtual clock is stepped at.
+     */
+    private static final int[] FRAMERATES = {60, 30, 10, 5, 1};
+
+    /**
+     * Runs the test.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args)
+    {
+        for(int fps: FRAMERATES)
+        {
+            long ticks = runSecond(fps);
+            if(ticks != TICK_RATE)
+            {
+                System.err.println("Stepping at " + fps + " FPS ran " + ticks + " ticks in one second, instead of " + TICK_RATE);
+                System.exit(1);
+            }
+            System.out.println("Stepping at " + fps + " FPS ran " + ticks + " ticks");
+        }
+    }
+
+    /**
+     * Steps one second of virtual time at a framerate, counting the update ticks run.
+     *
+     * @param fps the framerate
+     * @return the number of ticks
+     */
+    private static long runSecond(int fps)
+    {
+        HeadlessHost headless = new HeadlessHost(64, 64);
+        headless.setFPS(fps);
+        HostApplication host = headless.getHost();
+        host.setTickRate(TICK_RATE);
+
+        long[] ticks = {0};
+        SPComponent panel = new SPComponent()
+        {
+            @Override
+            public void update(double dt)
+            {
+                ticks[0]++;
+            }
+        };
+        host.add(panel, "panel");
+        host.displayPanel("panel");
+
+        headless.step(fps + 1); // The first frame only starts the clock
+        return ticks[0];
+    }
+}
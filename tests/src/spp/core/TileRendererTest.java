@@ -0,0 +1,252 @@
+package spp.core;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test for TileRenderer, comparing tiled renders against painting the same panel into a single image, pixel by pixel.
+ * The scene covers what a tiled render is most likely to get wrong: antialiased shapes and text crossing tile edges,
+ * components which leave graphics state behind for the components drawn after them, components without bounds, a cached
+ * layer and a viewport. Every combination of scale and worker pool must match exactly. Must be run with
+ * {@code -Dsun.java2d.renderer.clip=false} on Java 10 and later (see TileRenderer). Exits with status 1 on the first failure.
+ *
+ * @author Ben Zeng
+ * @version 2
+ */
+public class TileRendererTest
+{
+    /**
+     * The width of the panel.
+     */
+    private static final int PANEL_WIDTH = 480;
+    /**
+     * The height of the panel.
+     */
+    private static final int PANEL_HEIGHT = 360;
+    /**
+     * The height of a tile, which is rounded up to 64 rows, so tile edges cut through components and the viewport.
+     */
+    private static final int TILE_SIZE = 40;
+    /**
+     * The scales the panel is rendered at.
+     */
+    private static final double[] SCALES = {1, 1.5, 0.75, 2};
+
+    /**
+     * An antialiased circle with bounds, which sets the colour and stroke for whatever is drawn after it.
+     */
+    private static class Circle extends GraphicalComponent
+    {
+        /**
+         * The bounds of the circle.
+         */
+        private final Rectangle bounds;
+        /**
+         * The colour of the circle.
+         */
+        private final Color color;
+
+        /**
+         * Constructor for Circle.
+         *
+         * @param layer  the layer
+         * @param bounds the bounds of the circle
+         * @param color  the colour of the circle
+         */
+        Circle(int layer, Rectangle bounds, Color color)
+        {
+            super(layer);
+            this.bounds = bounds;
+            this.color = color;
+        }
+
+        @Override
+        public void draw(Graphics g)
+        {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(color);
+            g2.setStroke(new BasicStroke(1.5f));
+            g2.fill(new Ellipse2D.Double(bounds.x + 1, bounds.y + 1, bounds.width - 2, bounds.height - 2));
+        }
+
+        @Override
+        public Rectangle getBounds()
+        {
+            return bounds;
+        }
+    }
+
+    /**
+     * An outline and label with bounds, drawn with whatever colour, stroke and hints the previous component left behind.
+     */
+    private static class Label extends GraphicalComponent
+    {
+        /**
+         * The bounds of the label.
+         */
+        private final Rectangle bounds;
+
+        /**
+         * Constructor for Label.
+         *
+         * @param layer  the layer
+         * @param bounds the bounds of the label
+         */
+        Label(int layer, Rectangle bounds)
+        {
+            super(layer);
+            this.bounds = bounds;
+        }
+
+        @Override
+        public void draw(Graphics g)
+        {
+            g.drawRect(bounds.x + 1, bounds.y + 1, bounds.width - 3, bounds.height - 3);
+            g.drawString("Tile", bounds.x + 4, bounds.y + bounds.height - 5);
+        }
+
+        @Override
+        public Rectangle getBounds()
+        {
+            return bounds;
+        }
+    }
+
+    /**
+     * An antialiased curve across the whole panel, without bounds.
+     */
+    private static class Curve extends GraphicalComponent
+    {
+        /**
+         * Constructor for Curve.
+         *
+         * @param layer the layer
+         */
+        Curve(int layer)
+        {
+            super(layer);
+        }
+
+        @Override
+        public void draw(Graphics g)
+        {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(new Color(20, 20, 160, 180));
+            g2.setStroke(new BasicStroke(3f));
+            g2.drawArc(-PANEL_WIDTH / 2, 10, PANEL_WIDTH * 2, PANEL_HEIGHT * 2, 60, 60);
+        }
+    }
+
+    /**
+     * Runs the test.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args)
+    {
+        SPComponent panel = createPanel();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try
+        {
+            for(boolean viewport: new boolean[]{false, true})
+            {
+                panel.setViewport(viewport ? new Rectangle(30, 20, 400, 300) : null);
+                for(double scale: SCALES)
+                {
+                    for(ExecutorService pool: new ExecutorService[]{null, workers})
+                    {
+                        String failure = compare(panel, scale, pool);
+                        String name = "scale " + scale + (viewport ? " with a viewport" : "") + (pool == null ? " on one thread" : " on a pool");
+                        if(failure != null)
+                        {
+                            System.err.println("Tiled render at " + name + " differs: " + failure);
+                            System.exit(1);
+                        }
+                        System.out.println("Tiled render at " + name + " matches");
+                    }
+                }
+            }
+        }
+        finally
+        {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Creates the panel rendered by the test.
+     *
+     * @return the panel
+     */
+    private static SPComponent createPanel()
+    {
+        SPComponent panel = new SPComponent()
+        {
+            @Override
+            public void draw(Graphics g)
+            {
+                Graphics2D g2 = (Graphics2D) g;
+                g2.setPaint(new GradientPaint(0, 0, new Color(250, 240, 220), PANEL_WIDTH, PANEL_HEIGHT, new Color(200, 220, 250)));
+                g2.fillRect(0, 0, PANEL_WIDTH, PANEL_HEIGHT);
+            }
+        };
+        panel.setSize(PANEL_WIDTH, PANEL_HEIGHT);
+
+        Random random = new Random(21);
+        for(int i = 0; i < 300; i++)
+        {
+            int size = 8 + random.nextInt(40);
+            Rectangle bounds = new Rectangle(random.nextInt(PANEL_WIDTH + 40) - 20, random.nextInt(PANEL_HEIGHT + 40) - 20, size, size);
+            int layer = random.nextInt(3);
+            Color color = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 96 + random.nextInt(160));
+            panel.addComponent(random.nextInt(4) == 0 ? new Label(layer, bounds) : new Circle(layer, bounds, color));
+        }
+        panel.addComponent(new Curve(1));
+        for(int i = 0; i < 40; i++)
+            panel.addComponent(new Circle(5, new Rectangle(random.nextInt(PANEL_WIDTH), random.nextInt(PANEL_HEIGHT), 30, 30), new Color(0, 120, 0, 128)));
+        panel.setLayerCached(5, true);
+        panel.clearPending();
+        return panel;
+    }
+
+    /**
+     * Renders a panel both by painting it and through a TileRenderer, and compares the two images.
+     *
+     * @param panel the panel
+     * @param scale the factor panel coordinates are scaled by
+     * @param pool  the pool tiles are rendered on, or null to render every tile on the calling thread
+     * @return a description of the first differing pixel, or null if the images are identical
+     */
+    private static String compare(SPComponent panel, double scale, ExecutorService pool)
+    {
+        int width = (int) Math.ceil(PANEL_WIDTH * scale), height = (int) Math.ceil(PANEL_HEIGHT * scale);
+        BufferedImage painted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = painted.createGraphics();
+        try
+        {
+            g.scale(scale, scale);
+            panel.paint(g);
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        BufferedImage tiled = new TileRenderer(TILE_SIZE, pool).render(panel, new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE), scale);
+        for(int y = 0; y < height; y++)
+        {
+            for(int x = 0; x < width; x++)
+            {
+                if(painted.getRGB(x, y) != tiled.getRGB(x, y))
+                    return String.format("pixel (%d, %d) is %08x painted, but %08x tiled", x, y, painted.getRGB(x, y), tiled.getRGB(x, y));
+            }
+        }
+        return null;
+    }
+}